@@ -0,0 +1,31 @@
+package com.jcflion.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 从IDE运行压测的入口，默认开启GC分析(等同于 -prof gc)，
+ * 关注结果中的 gc.alloc.rate.norm(每次操作分配的字节数)，读取和灰度判断路径应为0
+ *
+ * @author kanner
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    /**
+     * @param args 与 benchmarks.jar 相同的命令行参数，例如 "GrayBenchmark" 只运行灰度判断的压测
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.jcflion.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 生成压测用的配置文本
+ *
+ * @author kanner
+ */
+final class ConfigContents {
+
+    private static final int KEYS_PER_FILE = 100;
+
+    private ConfigContents() {}
+
+    /**
+     * 生成约为指定字节数的配置文本，每个配置文件100个配置项，
+     * 配置值依次为字符串、整数、浮点数、布尔值和灰度规则
+     *
+     * @param bytes 目标字节数
+     * @param variant 变体，不同变体的部分配置值不同，用于模拟真实的重载
+     * @return 配置文本
+     */
+    static String generate(int bytes, int variant) {
+        final StringBuilder sb = new StringBuilder(bytes + 256);
+        int file = 0;
+        while (sb.length() < bytes) {
+            sb.append("# generated config file ").append(file).append('\n');
+            sb.append("[app").append(file).append("]\n");
+            for (int i = 0; i < KEYS_PER_FILE && sb.length() < bytes; ++i) {
+                sb.append("key").append(i).append(" = ");
+                // 每个变体修改约十分之一的配置值
+                final int value = i % 10 == variant % 10 ? i + variant : i;
+                switch (i % 5) {
+                    case 0:
+                        sb.append("value-").append(value);
+                        break;
+                    case 1:
+                        sb.append(value * 1000L);
+                        break;
+                    case 2:
+                        sb.append(value).append(".5");
+                        break;
+                    case 3:
+                        sb.append(value % 2 == 0);
+                        break;
+                    default:
+                        sb.append("allow;").append(value).append(";").append(value + 1).append(";%").append(value % 7 + 2);
+                        break;
+                }
+                sb.append('\n');
+            }
+            ++file;
+        }
+        return sb.toString();
+    }
+
+    static byte[] generateBytes(int bytes, int variant) {
+        return generate(bytes, variant).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.ConfigKey;
+import com.jcflion.ConfigManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置读取的压测，配置项名放在非final字段中，避免被JIT当作常量折叠
+ *
+ * @author kanner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigReadBenchmark {
+
+    private String configFilename;
+
+    private String stringKey;
+
+    private String stringName;
+
+    private String longName;
+
+    private String doubleName;
+
+    private String booleanName;
+
+    private String missingName;
+
+    private ConfigKey longKey;
+
+    @Setup
+    public void setup() {
+        ConfigManager.reloadConfigContent(ConfigContents.generate(64 * 1024, 0));
+        configFilename = "app3";
+        stringKey = "key10";
+        stringName = "app3.key10";
+        longName = "app3.key11";
+        doubleName = "app3.key12";
+        booleanName = "app3.key13";
+        missingName = "app3.missing";
+        longKey = ConfigManager.key(longName);
+    }
+
+    @Benchmark
+    public String getConfigByName() {
+        return ConfigManager.getConfig(stringName);
+    }
+
+    @Benchmark
+    public String getConfigByFilenameAndKey() {
+        return ConfigManager.getConfig(configFilename, stringKey);
+    }
+
+    @Benchmark
+    public String getConfigWithDefaultMissing() {
+        return ConfigManager.getConfigWithDefault(missingName, "default");
+    }
+
+    @Benchmark
+    public int getIntConfig() {
+        return ConfigManager.getIntConfig(longName, -1);
+    }
+
+    @Benchmark
+    public long getLongConfig() {
+        return ConfigManager.getLongConfig(longName, -1L);
+    }
+
+    @Benchmark
+    public short getShortConfigOverflow() {
+        return ConfigManager.getShortConfig(longName, (short) -1);
+    }
+
+    @Benchmark
+    public double getDoubleConfig() {
+        return ConfigManager.getDoubleConfig(doubleName, -1D);
+    }
+
+    @Benchmark
+    public double getFloatConfig() {
+        return ConfigManager.getFloatConfig(doubleName, -1F);
+    }
+
+    @Benchmark
+    public boolean getBooleanConfig() {
+        return ConfigManager.getBooleanConfig(booleanName, false);
+    }
+
+    @Benchmark
+    public long configKeyGetLong() {
+        return longKey.getLong(-1L);
+    }
+}
@@ -0,0 +1,143 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.ConfigManager;
+import com.jcflion.gray.GrayConfigManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 灰度判断的压测，分别覆盖小名单和大名单、数字名单和字符串名单、命中和未命中，
+ * 以及取模和按比例放量规则。每次调用轮换id，避免分支预测和缓存只命中同一个值
+ *
+ * @author kanner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GrayBenchmark {
+
+    private static final int ID_COUNT = 1024;
+
+    private static final long ID_BASE = 10_000_000L;
+
+    @Param({"16", "100000"})
+    private int nameCount;
+
+    private String numericRule;
+
+    private String stringRule;
+
+    private String moduloRule;
+
+    private String rolloutRule;
+
+    private long[] hitLongIds;
+
+    private long[] missLongIds;
+
+    private String[] hitStringIds;
+
+    private String[] missStringIds;
+
+    private String[] hitNameIds;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        final StringBuilder numeric = new StringBuilder("allow");
+        final StringBuilder names = new StringBuilder("deny");
+        for (int i = 0; i < nameCount; ++i) {
+            numeric.append(';').append(ID_BASE + i);
+            names.append(";user-").append(i);
+        }
+        ConfigManager.reloadConfigContent("[gray]\n"
+                + "numeric = " + numeric + "\n"
+                + "names = " + names + "\n"
+                + "modulo = deny;%7;%13\n"
+                + "rollout = deny;pct:5\n");
+        numericRule = "gray.numeric";
+        stringRule = "gray.names";
+        moduloRule = "gray.modulo";
+        rolloutRule = "gray.rollout";
+
+        hitLongIds = new long[ID_COUNT];
+        missLongIds = new long[ID_COUNT];
+        hitStringIds = new String[ID_COUNT];
+        missStringIds = new String[ID_COUNT];
+        hitNameIds = new String[ID_COUNT];
+        for (int i = 0; i < ID_COUNT; ++i) {
+            final long hit = ID_BASE + (i * 7919L) % nameCount;
+            final long miss = ID_BASE + nameCount + i;
+            hitLongIds[i] = hit;
+            missLongIds[i] = miss;
+            hitStringIds[i] = String.valueOf(hit);
+            missStringIds[i] = String.valueOf(miss);
+            hitNameIds[i] = "user-" + (i * 7919L) % nameCount;
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (ID_COUNT - 1);
+        return index;
+    }
+
+    @Benchmark
+    public boolean longIdHit() {
+        return GrayConfigManager.isAllowed(numericRule, hitLongIds[next()]);
+    }
+
+    @Benchmark
+    public boolean longIdMiss() {
+        return GrayConfigManager.isAllowed(numericRule, missLongIds[next()]);
+    }
+
+    @Benchmark
+    public boolean numericStringIdHit() {
+        return GrayConfigManager.isAllowed(numericRule, hitStringIds[next()]);
+    }
+
+    @Benchmark
+    public boolean numericStringIdMiss() {
+        return GrayConfigManager.isAllowed(numericRule, missStringIds[next()]);
+    }
+
+    @Benchmark
+    public boolean stringNameHit() {
+        return GrayConfigManager.isAllowed(stringRule, hitNameIds[next()]);
+    }
+
+    @Benchmark
+    public boolean stringNameMiss() {
+        return GrayConfigManager.isAllowed(stringRule, missStringIds[next()]);
+    }
+
+    @Benchmark
+    public boolean modulo() {
+        return GrayConfigManager.isAllowed(moduloRule, missLongIds[next()]);
+    }
+
+    @Benchmark
+    public boolean rolloutLongId() {
+        return GrayConfigManager.isAllowed(rolloutRule, missLongIds[next()]);
+    }
+
+    @Benchmark
+    public boolean rolloutStringId() {
+        return GrayConfigManager.isAllowed(rolloutRule, missStringIds[next()]);
+    }
+}
@@ -0,0 +1,45 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.gray.GrayConfig;
+import com.jcflion.gray.RuleType;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 用JOL对比灰度名单的堆内存：编译前的 HashSet&lt;String&gt; 与编译后的名单
+ * (字母数字id存放在 CompactStringSet，数字id存放在long集合)
+ * <pre>
+ * java -Djdk.attach.allowAttachSelf=true -cp benchmarks/target/benchmarks.jar com.jcflion.benchmark.GraySetFootprint [ids]
+ * </pre>
+ *
+ * @author kanner
+ */
+public final class GraySetFootprint {
+
+    private static final long NUMERIC_ID_BASE = 100_000_000L;
+
+    private GraySetFootprint() {}
+
+    public static void main(String[] args) {
+        final int ids = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        final Set<String> alphanumeric = new HashSet<>(ids * 2);
+        final Set<String> numeric = new HashSet<>(ids * 2);
+        for (int i = 0; i < ids; ++i) {
+            alphanumeric.add(String.format("acct_%08d", i));
+            numeric.add(String.valueOf(NUMERIC_ID_BASE + i * 7L));
+        }
+        report("alphanumeric", alphanumeric);
+        report("numeric", numeric);
+    }
+
+    private static void report(String kind, Set<String> names) {
+        final Set<String> compiled = new GrayConfig("footprint." + kind, RuleType.ALLOW, names, null).getNameSet();
+        final long hashSetSize = GraphLayout.parseInstance(names).totalSize();
+        final long compiledSize = GraphLayout.parseInstance(compiled).totalSize();
+        System.out.printf("%s ids=%d: HashSet %d bytes (%.1f per id), GrayNameSet %d bytes (%.1f per id), %.1fx smaller%n",
+                kind, names.size(), hashSetSize, (double) hashSetSize / names.size(),
+                compiledSize, (double) compiledSize / names.size(), (double) hashSetSize / compiledSize);
+    }
+}
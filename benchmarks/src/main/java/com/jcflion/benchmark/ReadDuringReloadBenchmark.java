@@ -0,0 +1,97 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.ConfigManager;
+import com.jcflion.gray.GrayConfigManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台持续重载时的读吞吐。readOnly 组没有重载线程，作为对照；
+ * readWhileReload 组中一个线程不停重载1MB的配置，其余线程读取配置和做灰度判断
+ *
+ * @author kanner
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Group)
+public class ReadDuringReloadBenchmark {
+
+    private static final int CONTENT_BYTES = 1024 * 1024;
+
+    private String[] contents;
+
+    private String stringName;
+
+    private String longName;
+
+    private String grayName;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        contents = new String[]{ConfigContents.generate(CONTENT_BYTES, 0), ConfigContents.generate(CONTENT_BYTES, 1)};
+        ConfigManager.reloadConfigContent(contents[0]);
+        stringName = "app7.key20";
+        longName = "app7.key21";
+        grayName = "app7.key24";
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public String readOnlyGetConfig() {
+        return ConfigManager.getConfig(stringName);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public long readOnlyGetLongConfig() {
+        return ConfigManager.getLongConfig(longName, -1L);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(1)
+    public boolean readOnlyIsAllowed() {
+        return GrayConfigManager.isAllowed(grayName, 10086L);
+    }
+
+    @Benchmark
+    @Group("readWhileReload")
+    @GroupThreads(3)
+    public String getConfig() {
+        return ConfigManager.getConfig(stringName);
+    }
+
+    @Benchmark
+    @Group("readWhileReload")
+    @GroupThreads(3)
+    public long getLongConfig() {
+        return ConfigManager.getLongConfig(longName, -1L);
+    }
+
+    @Benchmark
+    @Group("readWhileReload")
+    @GroupThreads(1)
+    public void reload() {
+        index ^= 1;
+        ConfigManager.reloadConfigContent(contents[index]);
+    }
+}
@@ -0,0 +1,70 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.ConfigManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置重载的压测，配置文本从1KB到10MB。两个变体交替重载，每次约有十分之一的配置值变化，
+ * 与线上推送的情况接近。只读ByteBuffer与etcd返回的 ByteString.asReadOnlyByteBuffer() 一致。
+ * reloadUnchanged 重复推送当前配置，只计算指纹后跳过
+ *
+ * @author kanner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class ReloadBenchmark {
+
+    @Param({"1024", "102400", "1048576", "10485760"})
+    private int contentBytes;
+
+    private String[] contents;
+
+    private ByteBuffer[] buffers;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        contents = new String[2];
+        buffers = new ByteBuffer[2];
+        for (int i = 0; i < 2; ++i) {
+            contents[i] = ConfigContents.generate(contentBytes, i);
+            buffers[i] = ByteBuffer.wrap(ConfigContents.generateBytes(contentBytes, i)).asReadOnlyBuffer();
+        }
+        ConfigManager.reloadConfigContent(contents[0]);
+    }
+
+    @Benchmark
+    public void reloadString() {
+        index ^= 1;
+        ConfigManager.reloadConfigContent(contents[index]);
+    }
+
+    @Benchmark
+    public void reloadReadOnlyBuffer() {
+        index ^= 1;
+        ConfigManager.reloadConfigContent(buffers[index]);
+    }
+
+    @Benchmark
+    public void reloadUnchanged() {
+        ConfigManager.reloadConfigContent(buffers[index]);
+    }
+}
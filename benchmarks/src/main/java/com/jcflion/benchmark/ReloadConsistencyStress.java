@@ -0,0 +1,237 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.ConfigChangeEvent;
+import com.jcflion.ConfigKey;
+import com.jcflion.ConfigManager;
+import com.jcflion.ConfigSnapshot;
+import com.jcflion.gray.GrayConfigManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 重载与读取并发时的一致性压测：一个线程不停重载配置，其余线程同时读取配置和做灰度判断。
+ * 第g代配置中所有配置值都带有代号g，灰度规则为 deny;g (只允许id为g)，校验以下不变量：
+ * <ul>
+ *     <li>同一个快照上读到的所有配置值和灰度规则属于同一代，且代号与快照版本一致</li>
+ *     <li>不固定快照时，每个读线程观察到的代号单调不减，不会读到比已读过的更旧的配置</li>
+ *     <li>灰度规则不会比它所属的配置版本存活更久</li>
+ *     <li>监听器收到的变更按版本严格递增</li>
+ * </ul>
+ * 用法：java -cp benchmarks.jar com.jcflion.benchmark.ReloadConsistencyStress [读线程数] [秒数] [配置项数]，
+ * 发现违反不变量时打印首个错误并以状态码1退出
+ *
+ * @author kanner
+ */
+public final class ReloadConsistencyStress {
+
+    private static final String MARKER = "stress.marker";
+
+    private static final String GRAY_RULE = "gray.rule";
+
+    private static final String EXTRA_KEY = "extra.key";
+
+    private final int readers;
+
+    private final long durationMillis;
+
+    private final int keyCount;
+
+    private final String[] keyNames;
+
+    private final AtomicReference<String> failure = new AtomicReference<>();
+
+    private final LongAdder pinnedReads = new LongAdder();
+
+    private final LongAdder unpinnedReads = new LongAdder();
+
+    private final AtomicLong lastEventVersion = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private long baseVersion;
+
+    private long generations;
+
+    private ReloadConsistencyStress(int readers, long durationMillis, int keyCount) {
+        this.readers = readers;
+        this.durationMillis = durationMillis;
+        this.keyCount = keyCount;
+        this.keyNames = new String[keyCount];
+        for (int i = 0; i < keyCount; ++i) {
+            keyNames[i] = "stress.k" + i;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final int readers = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        final long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10L;
+        final int keyCount = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        final ReloadConsistencyStress stress = new ReloadConsistencyStress(readers, TimeUnit.SECONDS.toMillis(seconds), keyCount);
+        final boolean passed = stress.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws InterruptedException {
+        ConfigManager.reloadConfigContent(content(0L));
+        baseVersion = ConfigManager.snapshot().getVersion();
+        lastEventVersion.set(baseVersion);
+        ConfigManager.addListener(MARKER, this::onMarkerChange);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>(readers + 1);
+        for (int i = 0; i < readers; ++i) {
+            final boolean pinned = i % 2 == 0;
+            threads.add(new Thread(() -> {
+                await(start);
+                if (pinned) {
+                    readPinned();
+                } else {
+                    readUnpinned();
+                }
+            }, "stress-reader-" + i));
+        }
+        threads.add(new Thread(() -> {
+            await(start);
+            reload();
+        }, "stress-reloader"));
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        final long deadline = System.currentTimeMillis() + durationMillis;
+        while (System.currentTimeMillis() < deadline && null == failure.get()) {
+            Thread.sleep(50L);
+        }
+        running = false;
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("readers=%d, keys=%d, generations=%d, pinnedReads=%d, unpinnedReads=%d, lastEventVersion=%d%n",
+                readers, keyCount, generations, pinnedReads.sum(), unpinnedReads.sum(), lastEventVersion.get() - baseVersion);
+        if (null != failure.get()) {
+            System.out.println("FAILED: " + failure.get());
+            return false;
+        }
+        System.out.println("PASSED");
+        return true;
+    }
+
+    /**
+     * 第g代配置，奇数代额外包含 [extra] 配置文件，用于覆盖配置项的删除
+     */
+    private String content(long generation) {
+        final StringBuilder sb = new StringBuilder(keyCount * 24 + 64);
+        sb.append("[stress]\n");
+        sb.append("marker = ").append(generation).append('\n');
+        for (int i = 0; i < keyCount; ++i) {
+            sb.append('k').append(i).append(" = ").append(generation).append(':').append(i).append('\n');
+        }
+        sb.append("[gray]\n");
+        sb.append("rule = deny;").append(generation).append('\n');
+        if (generation % 2 == 1) {
+            sb.append("[extra]\n");
+            sb.append("key = ").append(generation).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void reload() {
+        long generation = 0L;
+        while (running) {
+            ++generation;
+            final String content = content(generation);
+            if (generation % 2 == 0) {
+                ConfigManager.reloadConfigContent(content);
+            } else {
+                ConfigManager.reloadConfigContent(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer());
+            }
+        }
+        generations = generation;
+    }
+
+    /**
+     * 固定快照读取：同一快照上的所有值属于同一代
+     */
+    private void readPinned() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            final ConfigSnapshot snapshot = ConfigManager.snapshot();
+            final long generation = snapshot.getLongConfig(MARKER, -1L);
+            check(generation == snapshot.getVersion() - baseVersion,
+                    "marker generation %d does not match snapshot version %d", generation, snapshot.getVersion() - baseVersion);
+            for (int n = 0; n < 8; ++n) {
+                final int i = random.nextInt(keyCount);
+                final String value = snapshot.getConfig(keyNames[i]);
+                check((generation + ":" + i).equals(value), "generation %d, %s has mixed value %s", generation, keyNames[i], value);
+            }
+            final String extra = snapshot.getConfig(EXTRA_KEY);
+            if (generation % 2 == 1) {
+                check(String.valueOf(generation).equals(extra), "generation %d, extra.key=%s", generation, extra);
+            } else {
+                check(null == extra, "generation %d, deleted extra.key still visible: %s", generation, extra);
+            }
+            check(GrayConfigManager.isAllowed(snapshot, GRAY_RULE, generation),
+                    "generation %d, gray rule does not allow its own generation", generation);
+            check(!GrayConfigManager.isAllowed(snapshot, GRAY_RULE, generation - 1),
+                    "generation %d, gray rule of previous generation still in effect", generation);
+            pinnedReads.increment();
+        }
+    }
+
+    /**
+     * 不固定快照读取：每个线程观察到的代号单调不减，灰度规则不落后于已读到的配置
+     */
+    private void readUnpinned() {
+        final ConfigKey markerKey = ConfigManager.key(MARKER);
+        long lastGeneration = 0L;
+        long lastKeyGeneration = 0L;
+        while (running) {
+            final long generation = ConfigManager.getLongConfig(MARKER, -1L);
+            check(generation >= lastGeneration, "generation went back from %d to %d", lastGeneration, generation);
+            lastGeneration = generation;
+
+            final long keyGeneration = markerKey.getLong(-1L);
+            check(keyGeneration >= lastKeyGeneration, "ConfigKey generation went back from %d to %d", lastKeyGeneration, keyGeneration);
+            check(keyGeneration >= generation, "ConfigKey generation %d older than read generation %d", keyGeneration, generation);
+            lastKeyGeneration = keyGeneration;
+
+            if (!GrayConfigManager.isAllowed(GRAY_RULE, keyGeneration)) {
+                // 规则只允许当前代号，不允许时配置必须已经更新到更新的一代
+                final long current = ConfigManager.getLongConfig(MARKER, -1L);
+                check(current > keyGeneration, "gray rule denies generation %d while config is still at %d", keyGeneration, current);
+            }
+            unpinnedReads.increment();
+        }
+    }
+
+    private void onMarkerChange(List<ConfigChangeEvent> events) {
+        for (final ConfigChangeEvent event : events) {
+            final long previous = lastEventVersion.getAndSet(event.getNewVersion());
+            check(event.getNewVersion() > previous, "listener event version %d not after %d", event.getNewVersion(), previous);
+        }
+    }
+
+    private void check(boolean condition, String format, Object... args) {
+        if (!condition && failure.compareAndSet(null, String.format(format, args))) {
+            running = false;
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.jcflion.benchmark;
+
+import com.jcflion.ConfigManager;
+import com.jcflion.ConfigSnapshot;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * 用JOL统计配置快照每个配置项占用的堆内存。配置值的分布接近线上：
+ * 三成为 true/false，两成为少数几个常用整数，一成为少数几个公共URL，其余各不相同
+ * <pre>
+ * java -Djdk.attach.allowAttachSelf=true -cp benchmarks/target/benchmarks.jar com.jcflion.benchmark.SnapshotFootprint [keys]
+ * </pre>
+ *
+ * @author kanner
+ */
+public final class SnapshotFootprint {
+
+    private static final int KEYS_PER_FILE = 100;
+
+    private static final String[] COMMON_INTS = {"0", "1", "100", "3000"};
+
+    private static final String[] COMMON_URLS = {
+            "http://user-service.internal:8080/api/v1",
+            "http://order-service.internal:8080/api/v1",
+            "jdbc:mysql://db-master.internal:3306/app?useUnicode=true&characterEncoding=utf8",
+    };
+
+    private SnapshotFootprint() {}
+
+    public static void main(String[] args) {
+        final int keys = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        ConfigManager.reloadConfigContent(generate(keys));
+        final ConfigSnapshot snapshot = ConfigManager.snapshot();
+        final GraphLayout layout = GraphLayout.parseInstance(snapshot);
+        System.out.println(layout.toFootprint());
+        System.out.printf("keys=%d, total=%d bytes, per key=%.1f bytes%n",
+                keys, layout.totalSize(), (double) layout.totalSize() / keys);
+    }
+
+    static String generate(int keys) {
+        final StringBuilder sb = new StringBuilder(keys * 48);
+        for (int i = 0; i < keys; ++i) {
+            if (i % KEYS_PER_FILE == 0) {
+                sb.append("[service-").append(i / KEYS_PER_FILE).append("]\n");
+            }
+            sb.append("feature.module").append(i % 37).append(".option").append(i).append(" = ");
+            final int kind = i % 10;
+            if (kind < 3) {
+                sb.append(i % 2 == 0);
+            } else if (kind < 5) {
+                sb.append(COMMON_INTS[i % COMMON_INTS.length]);
+            } else if (kind < 6) {
+                sb.append(COMMON_URLS[i % COMMON_URLS.length]);
+            } else if (kind < 8) {
+                sb.append(i * 7L);
+            } else {
+                sb.append("value-").append(i).append("-").append(Integer.toHexString(i * 31));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.jcflion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 从classpath资源读取完整的应用配置文本，只在启动时加载一次，适合打包在应用中的静态配置和批处理任务
+ *
+ * @author kanner
+ */
+public final class ClasspathConfigSource implements ConfigSource {
+
+    private final String resource;
+
+    private final ClassLoader classLoader;
+
+    /**
+     * 使用当前线程的 ContextClassLoader 查找资源
+     *
+     * @param resource 资源路径，如 config/app1.conf
+     */
+    public ClasspathConfigSource(String resource) {
+        this(resource, null);
+    }
+
+    /**
+     * @param resource 资源路径，如 config/app1.conf
+     * @param classLoader 查找资源的 ClassLoader，为null时使用当前线程的 ContextClassLoader
+     */
+    public ClasspathConfigSource(String resource, ClassLoader classLoader) {
+        if (null == resource || resource.isEmpty()) {
+            throw new IllegalArgumentException("resource is empty");
+        }
+        // ClassLoader 的资源路径不以"/"开头
+        this.resource = resource.startsWith("/") ? resource.substring(1) : resource;
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void start(ConfigSink sink) {
+        ClassLoader loader = null == classLoader ? Thread.currentThread().getContextClassLoader() : classLoader;
+        if (null == loader) {
+            loader = ClasspathConfigSource.class.getClassLoader();
+        }
+        try (InputStream in = loader.getResourceAsStream(resource)) {
+            if (null == in) {
+                sink.fail("config resource not found, resource=" + resource, null);
+                return;
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            sink.reload(ByteBuffer.wrap(out.toByteArray()));
+        } catch (IOException e) {
+            sink.fail("load config resource fail, resource=" + resource, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // 只加载一次，没有需要释放的资源
+    }
+
+    @Override
+    public String toString() {
+        return "ClasspathConfigSource [resource=" + resource + "]";
+    }
+
+    /**
+     * 处理 classpath:config/app1.conf 形式的地址
+     */
+    public static final class Provider implements ConfigSourceProvider {
+
+        @Override
+        public String scheme() {
+            return "classpath";
+        }
+
+        @Override
+        public ConfigSource create(String location) {
+            return new ClasspathConfigSource(location.substring("classpath:".length()));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.jcflion;
+
+import com.jcflion.util.StringUtil;
+
+/**
+ * 配置项变更事件
+ *
+ * @author kanner
+ */
+public final class ConfigChangeEvent {
+
+    /**
+     * 配置文件名
+     */
+    private final String configFilename;
+    /**
+     * 配置名
+     */
+    private final String key;
+    /**
+     * 变更前的值，新增配置项时为null
+     */
+    private final String oldValue;
+    /**
+     * 变更后的值，删除配置项时为null
+     */
+    private final String newValue;
+    /**
+     * 变更前的快照版本
+     */
+    private final long oldVersion;
+    /**
+     * 变更后的快照版本
+     */
+    private final long newVersion;
+
+    public ConfigChangeEvent(String configFilename, String key, String oldValue, String newValue, long oldVersion, long newVersion) {
+        this.configFilename = configFilename;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.oldVersion = oldVersion;
+        this.newVersion = newVersion;
+    }
+
+    public String getConfigFilename() {
+        return configFilename;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getConfigName() {
+        return StringUtil.concat(configFilename, ".", key);
+    }
+
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    public String getNewValue() {
+        return newValue;
+    }
+
+    public long getOldVersion() {
+        return oldVersion;
+    }
+
+    public long getNewVersion() {
+        return newVersion;
+    }
+
+    public boolean isAdded() {
+        return null == oldValue;
+    }
+
+    public boolean isDeleted() {
+        return null == newValue;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigChangeEvent [configFilename=" + configFilename + ", key=" + key + ", oldValue=" + oldValue
+                + ", newValue=" + newValue + ", oldVersion=" + oldVersion + ", newVersion=" + newVersion + "]";
+    }
+
+}
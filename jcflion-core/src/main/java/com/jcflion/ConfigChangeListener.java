@@ -0,0 +1,20 @@
+package com.jcflion;
+
+import java.util.List;
+
+/**
+ * 配置变更监听器，仅在关注的配置项实际发生变化时回调
+ *
+ * @author kanner
+ */
+@FunctionalInterface
+public interface ConfigChangeListener {
+
+    /**
+     * 配置变更回调，同一次加载中命中的所有变更一次性传入
+     *
+     * @param events 变更列表
+     */
+    void onChange(List<ConfigChangeEvent> events);
+
+}
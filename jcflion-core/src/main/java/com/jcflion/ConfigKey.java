@@ -0,0 +1,211 @@
+package com.jcflion;
+
+import com.jcflion.metrics.ConfigMetrics;
+import com.jcflion.util.StringUtil;
+
+/**
+ * 预编译的配置项句柄，配置文件名和配置名只解析一次，可在热点路径上重复使用
+ *
+ * @author kanner
+ */
+public final class ConfigKey {
+
+    /**
+     * 配置文件名
+     */
+    private final String configFilename;
+    /**
+     * 配置名
+     */
+    private final String key;
+    /**
+     * 配置项名：configFilename.key
+     */
+    private final String configName;
+    /**
+     * 最近一次解析的结果，快照替换后重新解析。
+     * Resolved 的字段均为 final，无需 volatile 也能安全发布
+     */
+    private Resolved resolved = Resolved.UNRESOLVED;
+
+    ConfigKey(String configFilename, String key) {
+        this.configFilename = configFilename;
+        this.key = key;
+        this.configName = StringUtil.concat(configFilename, ".", key);
+    }
+
+    public String getConfigFilename() {
+        return configFilename;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * 从当前快照查询配置
+     *
+     * @return 配置值
+     */
+    public String get() {
+        final ConfigValue value = lookup();
+        return null == value ? null : value.raw;
+    }
+
+    /**
+     * 从当前快照查询配置，若配置项不存在，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public String getWithDefault(String defaultValue) {
+        final String value = get();
+        if (StringUtil.isEmpty(value)) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * 从指定快照查询配置
+     *
+     * @param snapshot 配置快照
+     * @return 配置值
+     */
+    public String get(ConfigSnapshot snapshot) {
+        final Resolved current = resolved;
+        if (current.snapshot == snapshot) {
+            ConfigMetrics.recordLookup(null != current.value);
+            return null == current.value ? null : current.value.raw;
+        }
+        return snapshot.getConfig(configFilename, key);
+    }
+
+    /**
+     * 从当前快照查询boolean配置，若不存在配置项或无法解析，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public boolean getBoolean(boolean defaultValue) {
+        final ConfigValue value = lookup();
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getBoolean();
+    }
+
+    /**
+     * 从当前快照查询double配置，若不存在配置项或无法解析，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public double getDouble(double defaultValue) {
+        final ConfigValue value = lookup();
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getDouble(defaultValue);
+    }
+
+    /**
+     * 从当前快照查询float配置，若不存在配置项或无法解析，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public float getFloat(float defaultValue) {
+        final ConfigValue value = lookup();
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getFloat(defaultValue);
+    }
+
+    /**
+     * 从当前快照查询short配置，若不存在配置项或无法解析，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public short getShort(short defaultValue) {
+        final ConfigValue value = lookup();
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getShort(defaultValue);
+    }
+
+    /**
+     * 从当前快照查询int配置，若不存在配置项或无法解析，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public int getInt(int defaultValue) {
+        final ConfigValue value = lookup();
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getInt(defaultValue);
+    }
+
+    /**
+     * 从当前快照查询long配置，若不存在配置项或无法解析，则使用默认值作为返回结果
+     *
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public long getLong(long defaultValue) {
+        final ConfigValue value = lookup();
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getLong(defaultValue);
+    }
+
+    private ConfigValue lookup() {
+        final ConfigSnapshot snapshot = ConfigManager.snapshot();
+        Resolved current = resolved;
+        if (current.snapshot != snapshot) {
+            current = new Resolved(snapshot, snapshot.findValue(configFilename, key));
+            resolved = current;
+        }
+        ConfigMetrics.recordLookup(null != current.value);
+        return current.value;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey [configFilename=" + configFilename + ", key=" + key + "]";
+    }
+
+    /**
+     * 配置项在某个快照中的解析结果
+     */
+    private static final class Resolved {
+
+        static final Resolved UNRESOLVED = new Resolved(null, null);
+
+        final ConfigSnapshot snapshot;
+
+        final ConfigValue value;
+
+        Resolved(ConfigSnapshot snapshot, ConfigValue value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.jcflion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 配置变更监听器的注册表，每次加载后对比新旧快照，只通知配置项实际变化的监听器
+ *
+ * @author kanner
+ */
+final class ConfigListeners {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigListeners.class);
+
+    private static final CopyOnWriteArrayList<Registration> REGISTRATIONS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 回调监听器的线程池，未设置时使用单个守护线程，保证同一监听器的回调按加载顺序执行
+     */
+    private static volatile Executor executor;
+
+    private ConfigListeners() {}
+
+    static void add(MatchType matchType, String pattern, ConfigChangeListener listener) {
+        REGISTRATIONS.add(new Registration(matchType, pattern, listener));
+    }
+
+    static void remove(ConfigChangeListener listener) {
+        REGISTRATIONS.removeIf(registration -> registration.listener == listener);
+    }
+
+    static void setExecutor(Executor newExecutor) {
+        executor = newExecutor;
+    }
+
+    /**
+     * 对比新旧快照并通知相关监听器
+     *
+     * @param oldSnapshot 旧快照
+     * @param newSnapshot 新快照
+     */
+    static void fireChanges(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot) {
+        if (REGISTRATIONS.isEmpty()) {
+            return;
+        }
+        final List<ConfigChangeEvent> changes = ConfigSnapshot.diff(oldSnapshot, newSnapshot);
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (final Registration registration : REGISTRATIONS) {
+            List<ConfigChangeEvent> matched = null;
+            for (final ConfigChangeEvent change : changes) {
+                if (registration.matches(change)) {
+                    if (null == matched) {
+                        matched = new ArrayList<>();
+                    }
+                    matched.add(change);
+                }
+            }
+            if (null != matched) {
+                dispatch(registration.listener, matched);
+            }
+        }
+    }
+
+    private static void dispatch(ConfigChangeListener listener, List<ConfigChangeEvent> events) {
+        final Runnable task = () -> {
+            try {
+                listener.onChange(events);
+            } catch (Exception e) {
+                LOGGER.error("config change listener error, listener={}", listener, e);
+            }
+        };
+        try {
+            getExecutor().execute(task);
+        } catch (Exception e) {
+            LOGGER.error("dispatch config change fail, listener={}", listener, e);
+        }
+    }
+
+    private static Executor getExecutor() {
+        Executor current = executor;
+        if (null == current) {
+            synchronized (ConfigListeners.class) {
+                current = executor;
+                if (null == current) {
+                    final ExecutorService defaultExecutor = Executors.newSingleThreadExecutor(r -> {
+                        final Thread thread = new Thread(r, "cflion-config-listener");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = current = defaultExecutor;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 监听范围
+     */
+    enum MatchType {
+        /**
+         * 单个配置项：configFilename.key
+         */
+        CONFIG_NAME,
+        /**
+         * 整个配置文件
+         */
+        FILENAME,
+        /**
+         * 配置项名前缀
+         */
+        PREFIX
+    }
+
+    private static final class Registration {
+
+        final MatchType matchType;
+
+        final String pattern;
+
+        final ConfigChangeListener listener;
+
+        Registration(MatchType matchType, String pattern, ConfigChangeListener listener) {
+            this.matchType = matchType;
+            this.pattern = pattern;
+            this.listener = listener;
+        }
+
+        boolean matches(ConfigChangeEvent event) {
+            final String filename = event.getConfigFilename();
+            final String key = event.getKey();
+            switch (matchType) {
+                case FILENAME:
+                    return pattern.equals(filename);
+                case CONFIG_NAME:
+                    return matchesConfigName(filename, key, false);
+                case PREFIX:
+                    if (pattern.length() <= filename.length()) {
+                        return filename.startsWith(pattern);
+                    }
+                    return matchesConfigName(filename, key, true);
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * 不拼接字符串判断 configFilename.key 是否等于(或以其开头) pattern
+         */
+        private boolean matchesConfigName(String filename, String key, boolean prefix) {
+            final int fl = filename.length();
+            final int rest = pattern.length() - fl - 1;
+            if (rest < 0 || (!prefix && rest != key.length()) || rest > key.length()) {
+                return false;
+            }
+            return pattern.startsWith(filename) && pattern.charAt(fl) == '.' && key.regionMatches(0, pattern, fl + 1, rest);
+        }
+    }
+}
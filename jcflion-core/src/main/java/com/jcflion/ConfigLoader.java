@@ -0,0 +1,223 @@
+package com.jcflion;
+
+import com.jcflion.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 启动配置源，把配置源推送的配置写入 ConfigManager 的当前快照，并跟踪首个配置是否生效。
+ * <pre>
+ * ConfigLoader loader = ConfigLoader.open("file:/etc/app1.conf");
+ * loader.start();
+ * </pre>
+ *
+ * @author kanner
+ */
+public final class ConfigLoader implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigLoader.class);
+
+    private final ConfigSource source;
+
+    private final ConfigSink sink = new Sink();
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    /**
+     * 首个配置生效时完成，配置源失败时异常完成
+     */
+    private final CompletableFuture<ConfigSnapshot> ready = new CompletableFuture<>();
+    /**
+     * 创建初始化线程和配置源的监听线程，为null时使用默认线程(JDK 21及以上为虚拟线程，否则为守护线程)
+     */
+    private ThreadFactory threadFactory;
+
+    private volatile boolean closed;
+
+    public ConfigLoader(ConfigSource source) {
+        if (null == source) {
+            throw new IllegalArgumentException("source is null");
+        }
+        this.source = source;
+    }
+
+    /**
+     * 按地址创建配置源，地址的scheme由 ServiceLoader 发现的 ConfigSourceProvider 处理
+     *
+     * @param location 配置源地址，如 file:/etc/app1.conf
+     * @return 未启动的 ConfigLoader
+     * @throws IllegalArgumentException 地址不合法或没有支持该scheme的配置源
+     */
+    public static ConfigLoader open(String location) {
+        if (StringUtil.isEmpty(location) || location.indexOf(':') <= 0) {
+            throw new IllegalArgumentException("illegal config source location: " + location);
+        }
+        final String scheme = location.substring(0, location.indexOf(':'));
+        for (final ConfigSourceProvider provider : ServiceLoader.load(ConfigSourceProvider.class, ConfigLoader.class.getClassLoader())) {
+            if (scheme.equals(provider.scheme())) {
+                return new ConfigLoader(provider.create(location));
+            }
+        }
+        throw new IllegalArgumentException("no config source for scheme: " + scheme + ", location=" + location);
+    }
+
+    /**
+     * 在调用线程中启动配置源，只有第一次调用生效
+     *
+     * @return this
+     */
+    public ConfigLoader start() {
+        if (closed) {
+            LOGGER.warn("config loader has been closed, skip starting source={}", source);
+            return this;
+        }
+        if (!started.compareAndSet(false, true)) {
+            LOGGER.warn("config source has already started, source={}", source);
+            return this;
+        }
+        try {
+            source.start(sink);
+        } catch (RuntimeException e) {
+            sink.fail("start config source error, source=" + source, e);
+        }
+        return this;
+    }
+
+    /**
+     * 在后台线程中启动配置源，与调用方的其他启动步骤并行进行
+     *
+     * @return 首个配置生效时完成，配置源失败时异常完成
+     */
+    public CompletableFuture<ConfigSnapshot> startAsync() {
+        sink.newThread("cflion-config-init", this::start).start();
+        // 返回派生的future，调用方无法替我们完成它
+        return ready.thenApply(snapshot -> snapshot);
+    }
+
+    /**
+     * 等待首个配置生效
+     *
+     * @param timeout 超时时间
+     * @param unit 超时时间单位
+     * @return 是否已生效，超时或配置源失败时返回false
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            ready.get(timeout, unit);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 首个配置是否已生效，可用于健康检查
+     *
+     * @return 是否已生效
+     */
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    public ConfigSource getSource() {
+        return source;
+    }
+
+    /**
+     * 设置创建初始化线程和配置源监听线程的 ThreadFactory，须在 start() 之前调用。
+     * 默认在JDK 21及以上使用虚拟线程，否则使用守护线程
+     *
+     * @param threadFactory 线程工厂
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * 关闭配置源，之后推送的配置被忽略，已加载的配置仍然可以读取
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        source.close();
+        ready.completeExceptionally(new IllegalStateException("config loader closed, source=" + source));
+    }
+
+    /**
+     * 只替换和删除本配置源加载过的配置文件，同一JVM中多个应用各自的配置源互不影响
+     */
+    private final class Sink implements ConfigSink {
+        /**
+         * 本配置源加载过的配置文件名，访问需持有 Sink 锁
+         */
+        private final Set<String> configFilenames = new HashSet<>();
+
+        @Override
+        public boolean reload(ByteBuffer content) {
+            if (closed || null == content || ConfigParser.isBlank(content)) {
+                return false;
+            }
+            synchronized (this) {
+                final Set<String> loaded = ConfigManager.reloadConfigContent(content, configFilenames);
+                if (null != loaded) {
+                    configFilenames.clear();
+                    configFilenames.addAll(loaded);
+                }
+            }
+            ready.complete(ConfigManager.snapshot());
+            return true;
+        }
+
+        @Override
+        public boolean reloadFiles(Map<String, ByteBuffer> files) {
+            if (closed || null == files) {
+                return false;
+            }
+            synchronized (this) {
+                final Map<String, ByteBuffer> owned = new HashMap<>(files.size() * 2);
+                for (final Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+                    if (null != file.getValue()) {
+                        owned.put(file.getKey(), file.getValue());
+                        configFilenames.add(file.getKey());
+                    } else if (configFilenames.remove(file.getKey())) {
+                        owned.put(file.getKey(), null);
+                    }
+                }
+                ConfigManager.reloadConfigFiles(owned);
+            }
+            final ConfigSnapshot snapshot = ConfigManager.snapshot();
+            if (snapshot.isEmpty()) {
+                return false;
+            }
+            ready.complete(snapshot);
+            return true;
+        }
+
+        @Override
+        public void fail(String message, Throwable cause) {
+            LOGGER.error(message, cause);
+            ready.completeExceptionally(new IllegalStateException(message, cause));
+        }
+
+        @Override
+        public Thread newThread(String name, Runnable task) {
+            return null == threadFactory ? WatchThreads.newThread(name, task) : threadFactory.newThread(task);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.jcflion;
+
+import com.jcflion.metrics.ConfigMetrics;
+import com.jcflion.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * @author kanner
+ */
+public final class ConfigManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigManager.class);
+
+    /**
+     * 当前生效的配置快照，加载配置时整体替换
+     */
+    private static volatile ConfigSnapshot currentSnapshot = ConfigSnapshot.EMPTY;
+
+    private ConfigManager() {}
+
+    /**
+     * 获取当前生效的配置快照，同一请求内的多次读取可固定在同一个版本上
+     *
+     * @return 配置快照
+     */
+    public static ConfigSnapshot snapshot() {
+        return currentSnapshot;
+    }
+
+    /**
+     * 创建预编译的配置项句柄，热点路径上应复用该句柄而不是每次传入配置项名
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @return 配置项句柄
+     */
+    public static ConfigKey key(String configName) {
+        if (StringUtil.isEmpty(configName)) {
+            throw new IllegalArgumentException("configName is empty");
+        }
+        final String[] arr = StringUtil.splitFirst(configName, ".");
+        if (null == arr || 2 != arr.length) {
+            throw new IllegalArgumentException("illegal configName: " + configName);
+        }
+        return key(arr[0], arr[1]);
+    }
+
+    /**
+     * 创建预编译的配置项句柄
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @return 配置项句柄
+     */
+    public static ConfigKey key(String configFilename, String key) {
+        if (StringUtil.isEmpty(configFilename) || StringUtil.isEmpty(key)) {
+            throw new IllegalArgumentException("illegal config key, configFilename=" + configFilename + ", key=" + key);
+        }
+        return new ConfigKey(configFilename, key);
+    }
+
+    /**
+     * 监听单个配置项的变更
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param listener 监听器
+     */
+    public static void addListener(String configName, ConfigChangeListener listener) {
+        checkListener(configName, listener);
+        ConfigListeners.add(ConfigListeners.MatchType.CONFIG_NAME, configName, listener);
+    }
+
+    /**
+     * 监听整个配置文件的变更
+     *
+     * @param configFilename 配置文件名
+     * @param listener 监听器
+     */
+    public static void addFileListener(String configFilename, ConfigChangeListener listener) {
+        checkListener(configFilename, listener);
+        ConfigListeners.add(ConfigListeners.MatchType.FILENAME, configFilename, listener);
+    }
+
+    /**
+     * 监听配置项名(configFilename.key)以指定前缀开头的所有配置项的变更
+     *
+     * @param prefix 配置项名前缀
+     * @param listener 监听器
+     */
+    public static void addPrefixListener(String prefix, ConfigChangeListener listener) {
+        checkListener(prefix, listener);
+        ConfigListeners.add(ConfigListeners.MatchType.PREFIX, prefix, listener);
+    }
+
+    /**
+     * 移除监听器的所有注册
+     *
+     * @param listener 监听器
+     */
+    public static void removeListener(ConfigChangeListener listener) {
+        ConfigListeners.remove(listener);
+    }
+
+    /**
+     * 设置回调监听器的线程池，默认使用单个守护线程
+     *
+     * @param executor 线程池
+     */
+    public static void setListenerExecutor(Executor executor) {
+        if (null == executor) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        ConfigListeners.setExecutor(executor);
+    }
+
+    private static void checkListener(String pattern, ConfigChangeListener listener) {
+        if (StringUtil.isEmpty(pattern) || null == listener) {
+            throw new IllegalArgumentException("illegal listener, pattern=" + pattern + ", listener=" + listener);
+        }
+    }
+
+    /**
+     * 根据配置文件名和配置名查询配置
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置项
+     * @return 配置值
+     */
+    public static String getConfig(String configFilename, String key) {
+        return currentSnapshot.getConfig(configFilename, key);
+    }
+
+    /**
+     * 根据配置文件名和配置名查询配置，若配置项不存在，则使用默认值作为返回结果
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static String getConfigWithDefault(String configFilename, String key, String defaultValue) {
+        return currentSnapshot.getConfigWithDefault(configFilename, key, defaultValue);
+    }
+
+    /**
+     * 查询配置
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @return 配置值
+     */
+    public static String getConfig(String configName) {
+        return currentSnapshot.getConfig(configName);
+    }
+
+    /**
+     * 查询配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static String getConfigWithDefault(String configName, String defaultValue) {
+        return currentSnapshot.getConfigWithDefault(configName, defaultValue);
+    }
+
+    /**
+     * 查询boolean配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static boolean getBooleanConfig(String configName, boolean defaultValue) {
+        return currentSnapshot.getBooleanConfig(configName, defaultValue);
+    }
+
+    /**
+     * 查询double配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static double getDoubleConfig(String configName, double defaultValue) {
+        return currentSnapshot.getDoubleConfig(configName, defaultValue);
+    }
+
+    /**
+     * 查询float配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static double getFloatConfig(String configName, float defaultValue) {
+        return currentSnapshot.getFloatConfig(configName, defaultValue);
+    }
+
+    /**
+     * 查询short配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static short getShortConfig(String configName, short defaultValue) {
+        return currentSnapshot.getShortConfig(configName, defaultValue);
+    }
+
+    /**
+     * 查询int配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static int getIntConfig(String configName, int defaultValue) {
+        return currentSnapshot.getIntConfig(configName, defaultValue);
+    }
+
+    /**
+     * 查询long配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public static long getLongConfig(String configName, long defaultValue) {
+        return currentSnapshot.getLongConfig(configName, defaultValue);
+    }
+
+    /**
+     * 加载配置文本在内存中，解析为新的快照后整体替换当前快照
+     *
+     * @param configContent 应用的配置文本
+     */
+    public static void reloadConfigContent(String configContent) {
+        if (StringUtil.isEmpty(configContent)) {
+            return;
+        }
+        reloadConfigContent(ByteBuffer.wrap(configContent.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 直接从UTF-8字节加载配置文本，不生成完整的配置字符串和行数组，不会修改configContent的position。
+     * 与当前快照指纹相同的配置文本直接跳过；只有指纹变化的配置文件才重新解析，
+     * 所有配置项都未变化时不替换快照，已编译的灰度规则保持不变。
+     * 配置文本中没有的配置文件都会被删除，同一JVM中有多个配置源时应通过 {@link ConfigLoader} 加载
+     *
+     * @param configContent UTF-8编码的应用配置文本
+     */
+    public static void reloadConfigContent(ByteBuffer configContent) {
+        if (null == configContent || ConfigParser.isBlank(configContent)) {
+            return;
+        }
+        reloadConfigContent(configContent, null);
+    }
+
+    /**
+     * 以一个配置源的完整配置文本替换该配置源的配置文件，其他配置源加载的配置文件保持不变
+     *
+     * @param configContent UTF-8编码的应用配置文本，不会修改其position
+     * @param ownedFilenames 该配置源此前加载的配置文件名，不在本次配置文本中的被删除；为null时替换全部配置文件
+     * @return 本次配置文本中的配置文件名，整体指纹相同而跳过时返回null
+     */
+    static Set<String> reloadConfigContent(ByteBuffer configContent, Set<String> ownedFilenames) {
+        final long fingerprint = ConfigParser.fingerprint(configContent);
+        synchronized (ConfigManager.class) {
+            // 快照的整体指纹只在快照恰好由一份配置文本生成时不为0，此时相同的配置文本可以直接跳过
+            if (0L != fingerprint && fingerprint == currentSnapshot.getFingerprint()) {
+                skip(fingerprint);
+                return null;
+            }
+            final ConfigSnapshot.Builder builder = new ConfigSnapshot.Builder(currentSnapshot);
+            final Set<String> configFilenames = ConfigParser.parse(configContent, builder);
+            boolean replaceAll = true;
+            if (null != ownedFilenames) {
+                final Set<String> replaced = new HashSet<>(ownedFilenames);
+                replaced.addAll(configFilenames);
+                replaceAll = replaced.containsAll(currentSnapshot.getConfigFilenames());
+                builder.retainExcept(replaced);
+            }
+            builder.fingerprint(replaceAll ? fingerprint : 0L);
+            if (builder.isUnchanged()) {
+                skip(fingerprint);
+                return configFilenames;
+            }
+            publish(builder);
+            return configFilenames;
+        }
+    }
+
+    /**
+     * 只重建单个配置文件，其他配置文件的配置项和已编译的灰度规则保持不变
+     *
+     * @param configFilename 配置文件名
+     * @param fileContent UTF-8编码的配置文件文本，不含"[配置文件名]"行，不会修改其position
+     */
+    public static void reloadConfigFile(String configFilename, ByteBuffer fileContent) {
+        if (StringUtil.isEmpty(configFilename) || null == fileContent) {
+            throw new IllegalArgumentException("illegal config file, configFilename=" + configFilename + ", fileContent=" + fileContent);
+        }
+        reloadConfigFiles(Collections.singletonMap(configFilename, fileContent));
+    }
+
+    /**
+     * 删除整个配置文件，其他配置文件保持不变
+     *
+     * @param configFilename 配置文件名
+     */
+    public static void removeConfigFile(String configFilename) {
+        if (StringUtil.isEmpty(configFilename)) {
+            throw new IllegalArgumentException("configFilename is empty");
+        }
+        reloadConfigFiles(Collections.singletonMap(configFilename, null));
+    }
+
+    /**
+     * 批量重建多个配置文件，只生成一个新快照，未涉及的配置文件直接复用上一个快照中的配置项
+     *
+     * @param files 配置文件名 -> UTF-8编码的配置文件文本，文本为null表示删除该配置文件
+     */
+    static void reloadConfigFiles(Map<String, ByteBuffer> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        synchronized (ConfigManager.class) {
+            final ConfigSnapshot.Builder builder = new ConfigSnapshot.Builder(currentSnapshot);
+            final Map<String, ByteBuffer> changed = new HashMap<>(files.size() * 2);
+            for (final Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+                if (null == file.getValue()) {
+                    changed.put(file.getKey(), null);
+                    continue;
+                }
+                final long fingerprint = ConfigParser.fileFingerprint(file.getValue());
+                if (!builder.isFileUnchanged(file.getKey(), fingerprint)) {
+                    builder.fileFingerprint(file.getKey(), fingerprint);
+                    changed.put(file.getKey(), file.getValue());
+                }
+            }
+            builder.retainExcept(changed.keySet());
+            for (final Map.Entry<String, ByteBuffer> file : changed.entrySet()) {
+                if (null != file.getValue()) {
+                    ConfigParser.parseFile(file.getValue(), file.getKey(), builder);
+                }
+            }
+            if (builder.isUnchanged()) {
+                skip(0L);
+                return;
+            }
+            publish(builder);
+        }
+    }
+
+    private static void skip(long fingerprint) {
+        ConfigMetrics.recordReloadSkipped();
+        LOGGER.info("config unchanged, skip reload, version={}, fingerprint={}",
+                currentSnapshot.getVersion(), Long.toHexString(fingerprint));
+    }
+
+    /**
+     * 构建新快照并整体替换当前快照，调用方需持有 ConfigManager.class 锁
+     *
+     * @param builder 快照构建器
+     */
+    private static void publish(ConfigSnapshot.Builder builder) {
+        final ConfigSnapshot oldSnapshot = currentSnapshot;
+        final ConfigSnapshot snapshot = builder.build(oldSnapshot.getVersion() + 1);
+        currentSnapshot = snapshot;
+        LOGGER.info("reload config, version={}", snapshot.getVersion());
+        ConfigListeners.fireChanges(oldSnapshot, snapshot);
+    }
+}
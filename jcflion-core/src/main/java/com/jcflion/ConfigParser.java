@@ -0,0 +1,301 @@
+package com.jcflion;
+
+import com.jcflion.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 配置文本解析器，不生成中间的行数组和子串，只创建最终的配置文件名、配置名和配置值。
+ * 解析规则：
+ * <ul>
+ *     <li>以"\n"分行，空白行忽略</li>
+ *     <li>以"#"开头的行为注释</li>
+ *     <li>以"["开头且以"]"结尾的行为配置文件名</li>
+ *     <li>包含"="的行以第一个"="分隔配置名和配置值，两者去除首尾空白后均不能为空</li>
+ * </ul>
+ * 解析时为每个配置文件计算指纹，与上一个快照中指纹相同的配置文件直接复用，不再逐行解析
+ *
+ * @author kanner
+ */
+final class ConfigParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigParser.class);
+
+    private ConfigParser() {}
+
+    /**
+     * 判断配置文本是否为空白
+     *
+     * @param content UTF-8编码的配置文本
+     * @return 是否为空白
+     */
+    static boolean isBlank(ByteBuffer content) {
+        for (int i = content.position(); i < content.limit(); ++i) {
+            if (!isWhitespace(content.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算整个配置文本的指纹
+     *
+     * @param content UTF-8编码的配置文本，不会修改其position
+     * @return 指纹
+     */
+    static long fingerprint(ByteBuffer content) {
+        return HashUtil.fingerprint64(content, content.position(), content.limit(), 0L);
+    }
+
+    /**
+     * 计算单个配置文件文本的指纹，与该配置文件在整个配置文本中的段落指纹一致
+     *
+     * @param content UTF-8编码的配置文件文本，不会修改其position
+     * @return 指纹
+     */
+    static long fileFingerprint(ByteBuffer content) {
+        return sectionFingerprint(content, content.position(), content.limit(), 0L);
+    }
+
+    /**
+     * 解析UTF-8编码的配置文本，并记录每个配置文件的指纹，不会修改content的position
+     *
+     * @param content UTF-8编码的配置文本
+     * @param builder 快照构建器
+     * @return 配置文本中的配置文件名
+     */
+    static Set<String> parse(ByteBuffer content, ConfigSnapshot.Builder builder) {
+        return new ByteScanner(content).parse(builder);
+    }
+
+    /**
+     * 解析单个配置文件的UTF-8配置文本，文本中不含"[配置文件名]"行，所有配置项都属于configFilename。
+     * 文本中的"[...]"行被忽略，一个配置文件不能写入其他配置文件的配置项。不会修改content的position
+     *
+     * @param content UTF-8编码的配置文件文本
+     * @param configFilename 配置文件名
+     * @param builder 快照构建器
+     */
+    static void parseFile(ByteBuffer content, String configFilename, ConfigSnapshot.Builder builder) {
+        new ByteScanner(content).parseLines(builder, configFilename, content.position(), content.limit());
+    }
+
+    /**
+     * 段落指纹不含最后一个换行符，单独存放的配置文件末尾有无换行都与合并后的段落一致
+     */
+    private static long sectionFingerprint(ByteBuffer content, int from, int to, long seed) {
+        if (to > from && content.get(to - 1) == '\n') {
+            --to;
+        }
+        return HashUtil.fingerprint64(content, from, to, seed);
+    }
+
+    private static void put(ConfigSnapshot.Builder builder, String configFilename, String key, String value) {
+        if (key.isEmpty() || value.isEmpty()) {
+            return;
+        }
+        builder.put(configFilename, key, value);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("update config, filename={}, key={}, value={}", configFilename, key, value);
+        }
+    }
+
+    /**
+     * 与 String.trim() 一致，小于等于空格的字符都是空白。UTF-8多字节字符的每个字节都不小于0x80，不会被误判
+     */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * 配置文本中一个"[配置文件名]"行之后、下一个"[配置文件名]"行之前的部分
+     */
+    private static final class Section {
+
+        private final String configFilename;
+
+        private final int start;
+
+        private int end;
+
+        Section(String configFilename, int start) {
+            this.configFilename = configFilename;
+            this.start = start;
+        }
+    }
+
+    /**
+     * 按字节扫描配置文本，对于不能直接访问底层数组的buffer，通过复用的临时数组解码
+     */
+    private static final class ByteScanner {
+
+        private final ByteBuffer buffer;
+
+        private final byte[] array;
+
+        private final int arrayOffset;
+
+        private byte[] scratch;
+
+        ByteScanner(ByteBuffer buffer) {
+            this.buffer = buffer;
+            if (buffer.hasArray()) {
+                this.array = buffer.array();
+                this.arrayOffset = buffer.arrayOffset();
+            } else {
+                this.array = null;
+                this.arrayOffset = 0;
+            }
+        }
+
+        /**
+         * 先只扫描"[配置文件名]"行切分段落并计算每个配置文件的指纹，
+         * 再复用指纹未变化的配置文件，只逐行解析变化的配置文件
+         */
+        Set<String> parse(ConfigSnapshot.Builder builder) {
+            final List<Section> sections = split();
+            final Map<String, Long> fingerprints = new HashMap<>();
+            for (final Section section : sections) {
+                final Long seed = fingerprints.get(section.configFilename);
+                fingerprints.put(section.configFilename,
+                        sectionFingerprint(buffer, section.start, section.end, null == seed ? 0L : seed));
+            }
+            final Set<String> unchanged = new HashSet<>();
+            for (final Map.Entry<String, Long> fingerprint : fingerprints.entrySet()) {
+                builder.fileFingerprint(fingerprint.getKey(), fingerprint.getValue());
+                if (builder.isFileUnchanged(fingerprint.getKey(), fingerprint.getValue())) {
+                    unchanged.add(fingerprint.getKey());
+                }
+            }
+            if (!unchanged.isEmpty()) {
+                builder.retain(unchanged);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("config files unchanged, skip parsing, filenames={}", unchanged);
+                }
+            }
+            for (final Section section : sections) {
+                if (!unchanged.contains(section.configFilename)) {
+                    parseLines(builder, section.configFilename, section.start, section.end);
+                }
+            }
+            return fingerprints.keySet();
+        }
+
+        /**
+         * 按"[配置文件名]"行切分，配置文件名为空的段落以及第一个"[配置文件名]"行之前的内容被忽略
+         */
+        private List<Section> split() {
+            final int limit = buffer.limit();
+            final List<Section> sections = new ArrayList<>();
+            Section section = null;
+            int lineStart = buffer.position();
+            while (lineStart < limit) {
+                int lineEnd = indexOf((byte) '\n', lineStart, limit);
+                if (lineEnd < 0) {
+                    lineEnd = limit;
+                }
+                final int start = lineStart;
+                lineStart = lineEnd + 1;
+                if (lineEnd > start && byteAt(start) == '[' && byteAt(lineEnd - 1) == ']') { // config file name
+                    if (null != section) {
+                        section.end = start;
+                    }
+                    final String configFilename = decodeTrimmed(start + 1, lineEnd - 1);
+                    section = configFilename.isEmpty() ? null : new Section(configFilename, Math.min(lineStart, limit));
+                    if (null != section) {
+                        sections.add(section);
+                    }
+                }
+            }
+            if (null != section) {
+                section.end = limit;
+            }
+            return sections;
+        }
+
+        /**
+         * 逐行解析 [from, to) 中属于同一配置文件的配置项，忽略其中的"[...]"行
+         */
+        void parseLines(ConfigSnapshot.Builder builder, String configFilename, int from, int to) {
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = indexOf((byte) '\n', lineStart, to);
+                if (lineEnd < 0) {
+                    lineEnd = to;
+                }
+                final int start = lineStart;
+                lineStart = lineEnd + 1;
+                if (isBlank(start, lineEnd)) {
+                    continue;
+                }
+                final byte first = byteAt(start);
+                if (first == '#') { // comment
+                    continue;
+                }
+                if (first == '[' && byteAt(lineEnd - 1) == ']') { // config file name
+                    continue;
+                }
+                final int eq = indexOf((byte) '=', start, lineEnd);
+                if (eq < 0) {
+                    continue;
+                }
+                put(builder, configFilename, decodeTrimmed(start, eq), decodeTrimmed(eq + 1, lineEnd));
+            }
+        }
+
+        private byte byteAt(int index) {
+            return null != array ? array[arrayOffset + index] : buffer.get(index);
+        }
+
+        private int indexOf(byte target, int from, int to) {
+            for (int i = from; i < to; ++i) {
+                if (byteAt(i) == target) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isBlank(int from, int to) {
+            for (int i = from; i < to; ++i) {
+                if (!isWhitespace(byteAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String decodeTrimmed(int from, int to) {
+            while (from < to && isWhitespace(byteAt(from))) {
+                ++from;
+            }
+            while (to > from && isWhitespace(byteAt(to - 1))) {
+                --to;
+            }
+            final int len = to - from;
+            if (0 == len) {
+                return "";
+            }
+            if (null != array) {
+                return new String(array, arrayOffset + from, len, StandardCharsets.UTF_8);
+            }
+            if (null == scratch || scratch.length < len) {
+                scratch = new byte[Math.max(len, 256)];
+            }
+            for (int i = 0; i < len; ++i) {
+                scratch[i] = buffer.get(from + i);
+            }
+            return new String(scratch, 0, len, StandardCharsets.UTF_8);
+        }
+    }
+}
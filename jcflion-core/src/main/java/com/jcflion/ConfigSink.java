@@ -0,0 +1,49 @@
+package com.jcflion;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * 配置源推送配置的接收方，由 {@link ConfigLoader} 提供，写入 ConfigManager 的当前快照。
+ * 所有方法都是线程安全的，ConfigLoader 关闭后推送的配置被忽略
+ *
+ * @author kanner
+ */
+public interface ConfigSink {
+
+    /**
+     * 以完整的应用配置文本整体替换本配置源的配置文件，不会修改content的position。
+     * 本配置源此前加载过、但不在该配置文本中的配置文件被删除，其他配置源的配置文件保持不变
+     *
+     * @param content UTF-8编码的应用配置文本，可以是内存映射的buffer
+     * @return 配置是否生效，空白配置不生效
+     */
+    boolean reload(ByteBuffer content);
+
+    /**
+     * 只重建变化的配置文件，其他配置文件保持不变
+     *
+     * @param files 配置文件名 -> UTF-8编码的配置文件文本(不含"[配置文件名]"行)，
+     *              文本为null表示删除该配置文件，只能删除本配置源加载过的配置文件
+     * @return 重建后是否存在配置项
+     */
+    boolean reloadFiles(Map<String, ByteBuffer> files);
+
+    /**
+     * 配置源无法提供配置。首个配置生效前调用时初始化失败，之后调用只记录日志
+     *
+     * @param message 失败原因
+     * @param cause 异常，没有时为null
+     */
+    void fail(String message, Throwable cause);
+
+    /**
+     * 创建配置源的监听线程，默认在JDK 21及以上为虚拟线程，否则为守护线程
+     *
+     * @param name 线程名
+     * @param task 任务
+     * @return 未启动的线程
+     */
+    Thread newThread(String name, Runnable task);
+
+}
@@ -0,0 +1,443 @@
+package com.jcflion;
+
+import com.jcflion.gray.GrayConfig;
+import com.jcflion.metrics.ConfigMetrics;
+import com.jcflion.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 配置快照，每次加载配置都会构建一个新的快照，构建完成后不可变
+ *
+ * @author kanner
+ */
+public final class ConfigSnapshot {
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(0L, ConfigTable.EMPTY, 0L, Collections.emptyMap());
+
+    /**
+     * 快照版本号，每次加载递增
+     */
+    private final long version;
+
+    /**
+     * (配置文件名, 配置名) -> 配置值
+     */
+    private final ConfigTable configTable;
+    /**
+     * 生成该快照的整个配置文本的指纹，按配置文件增量加载时为0(未知)
+     */
+    private final long fingerprint;
+    /**
+     * 配置文件名 -> 该配置文件文本的指纹，再次加载时指纹相同的配置文件不再解析
+     */
+    private final Map<String, Long> fileFingerprints;
+
+    private ConfigSnapshot(long version, ConfigTable configTable, long fingerprint, Map<String, Long> fileFingerprints) {
+        this.version = version;
+        this.configTable = configTable;
+        this.fingerprint = fingerprint;
+        this.fileFingerprints = fileFingerprints;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 生成该快照的配置文本的64位指纹，可用于核对各实例加载的是否为同一份配置
+     *
+     * @return 指纹，按配置文件增量加载时为0
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return 是否不含任何配置项
+     */
+    boolean isEmpty() {
+        return 0 == configTable.size();
+    }
+
+    /**
+     * @param configFilename 配置文件名
+     * @return 该配置文件文本的指纹，没有时返回null
+     */
+    Long getFileFingerprint(String configFilename) {
+        return fileFingerprints.get(configFilename);
+    }
+
+    /**
+     * @return 已加载的全部配置文件名，包括没有有效配置项的配置文件
+     */
+    Set<String> getConfigFilenames() {
+        return Collections.unmodifiableSet(fileFingerprints.keySet());
+    }
+
+    /**
+     * 根据配置文件名和配置名查询配置
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置项
+     * @return 配置值
+     */
+    public String getConfig(String configFilename, String key) {
+        final ConfigValue value = getValue(configFilename, key);
+        return null == value ? null : value.raw;
+    }
+
+    /**
+     * 根据配置文件名和配置名查询配置，若配置项不存在，则使用默认值作为返回结果
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public String getConfigWithDefault(String configFilename, String key, String defaultValue) {
+        final String value = getConfig(configFilename, key);
+        if (StringUtil.isEmpty(value)) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * 查询配置
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @return 配置值
+     */
+    public String getConfig(String configName) {
+        final ConfigValue value = getValue(configName);
+        return null == value ? null : value.raw;
+    }
+
+    /**
+     * 查询配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public String getConfigWithDefault(String configName, String defaultValue) {
+        final String value = getConfig(configName);
+        if (StringUtil.isEmpty(value)) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * 查询boolean配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public boolean getBooleanConfig(String configName, boolean defaultValue) {
+        final ConfigValue value = getValue(configName);
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getBoolean();
+    }
+
+    /**
+     * 查询double配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public double getDoubleConfig(String configName, double defaultValue) {
+        final ConfigValue value = getValue(configName);
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getDouble(defaultValue);
+    }
+
+    /**
+     * 查询float配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public double getFloatConfig(String configName, float defaultValue) {
+        final ConfigValue value = getValue(configName);
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getFloat(defaultValue);
+    }
+
+    /**
+     * 查询short配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public short getShortConfig(String configName, short defaultValue) {
+        final ConfigValue value = getValue(configName);
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getShort(defaultValue);
+    }
+
+    /**
+     * 查询int配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public int getIntConfig(String configName, int defaultValue) {
+        final ConfigValue value = getValue(configName);
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getInt(defaultValue);
+    }
+
+    /**
+     * 查询long配置，若不存在配置项，则使用默认值作为返回结果
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param defaultValue 默认配置值
+     * @return 配置值
+     */
+    public long getLongConfig(String configName, long defaultValue) {
+        final ConfigValue value = getValue(configName);
+        if (null == value) {
+            ConfigMetrics.recordDefaultFallback();
+            return defaultValue;
+        }
+        return value.getLong(defaultValue);
+    }
+
+    /**
+     * 查询编译后的灰度规则
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @return 灰度规则，不存在或配置值不是灰度规则时返回null
+     */
+    public GrayConfig getGrayConfig(String configName) {
+        final ConfigValue value = configTable.get(configName);
+        return null == value ? null : value.grayConfig;
+    }
+
+    /**
+     * 查询编译后的灰度规则
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @return 灰度规则，不存在或配置值不是灰度规则时返回null
+     */
+    public GrayConfig getGrayConfig(String configFilename, String key) {
+        final ConfigValue value = configTable.get(configFilename, key);
+        return null == value ? null : value.grayConfig;
+    }
+
+    /**
+     * 根据配置文件名和配置名查询配置值
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @return 配置值，不存在时返回null
+     */
+    ConfigValue getValue(String configFilename, String key) {
+        final ConfigValue value = configTable.get(configFilename, key);
+        ConfigMetrics.recordLookup(null != value);
+        return value;
+    }
+
+    /**
+     * 根据配置文件名和配置名查询配置值，不计入查询指标
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @return 配置值，不存在时返回null
+     */
+    ConfigValue findValue(String configFilename, String key) {
+        return configTable.get(configFilename, key);
+    }
+
+    /**
+     * 根据配置项名查询配置值
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @return 配置值，不存在时返回null
+     */
+    ConfigValue getValue(String configName) {
+        final ConfigValue value = configTable.get(configName);
+        ConfigMetrics.recordLookup(null != value);
+        return value;
+    }
+
+    /**
+     * 对比两个快照，找出新增、修改和删除的配置项
+     *
+     * @param oldSnapshot 旧快照
+     * @param newSnapshot 新快照
+     * @return 变更列表
+     */
+    static List<ConfigChangeEvent> diff(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot) {
+        final ConfigTable oldTable = oldSnapshot.configTable;
+        final ConfigTable newTable = newSnapshot.configTable;
+        final List<ConfigChangeEvent> changes = new ArrayList<>();
+        for (int entry = 0; entry < newTable.size(); ++entry) {
+            final ConfigValue newValue = newTable.valueAt(entry);
+            final ConfigValue oldValue = oldTable.get(newTable, entry);
+            if (null == oldValue || (oldValue != newValue && !oldValue.raw.equals(newValue.raw))) {
+                changes.add(new ConfigChangeEvent(newTable.filenameAt(entry), newTable.keyAt(entry),
+                        null == oldValue ? null : oldValue.raw, newValue.raw, oldSnapshot.version, newSnapshot.version));
+            }
+        }
+        for (int entry = 0; entry < oldTable.size(); ++entry) {
+            if (null == newTable.get(oldTable, entry)) {
+                changes.add(new ConfigChangeEvent(oldTable.filenameAt(entry), oldTable.keyAt(entry),
+                        oldTable.valueAt(entry).raw, null, oldSnapshot.version, newSnapshot.version));
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigSnapshot [version=" + version + ", configTable=" + configTable + "]";
+    }
+
+    /**
+     * 快照构建器，仅在加载配置的线程内使用，构建时一次性解析所有配置值的基本类型
+     */
+    static final class Builder {
+
+        private final ConfigTable.Builder tableBuilder;
+
+        /**
+         * 上一个快照，配置值未变化的配置项直接复用其解析结果和灰度规则，避免新旧快照各持有一份大名单
+         */
+        private final ConfigSnapshot previous;
+
+        private final Map<String, Long> fileFingerprints = new HashMap<>();
+        /**
+         * 本次构建中新解析的非灰度配置值，相同的原始值(如 true、0、公共URL)共用同一个 ConfigValue
+         */
+        private final Map<String, ConfigValue> sharedValues = new HashMap<>();
+
+        private long fingerprint;
+        /**
+         * 是否放入了上一个快照中没有的配置值
+         */
+        private boolean modified;
+
+        Builder(ConfigSnapshot previous) {
+            this.previous = previous;
+            this.tableBuilder = new ConfigTable.Builder(Math.max(previous.configTable.size(), 16));
+        }
+
+        /**
+         * @param configFilename 配置文件名
+         * @param fingerprint 配置文件文本的指纹
+         * @return 该配置文件在上一个快照中的指纹是否相同
+         */
+        boolean isFileUnchanged(String configFilename, long fingerprint) {
+            final Long previousFingerprint = previous.getFileFingerprint(configFilename);
+            return null != previousFingerprint && previousFingerprint == fingerprint;
+        }
+
+        void put(String configFilename, String key, String value) {
+            final ConfigValue previousValue = previous.findValue(configFilename, key);
+            if (null != previousValue && previousValue.raw.equals(value)) {
+                tableBuilder.put(configFilename, key, previousValue);
+                return;
+            }
+            modified = true;
+            ConfigValue configValue = sharedValues.get(value);
+            if (null == configValue) {
+                configValue = ConfigValue.parse(configFilename, key, value);
+                // 灰度规则按配置项统计指标，不能共用
+                if (null == configValue.grayConfig) {
+                    sharedValues.put(value, configValue);
+                }
+            }
+            tableBuilder.put(configFilename, key, configValue);
+        }
+
+        /**
+         * @param fingerprint 整个配置文本的指纹
+         */
+        void fingerprint(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @param configFilename 配置文件名
+         * @param fingerprint 该配置文件文本的指纹
+         */
+        void fileFingerprint(String configFilename, long fingerprint) {
+            fileFingerprints.put(configFilename, fingerprint);
+        }
+
+        /**
+         * 保留上一个快照中指定配置文件的全部配置项，用于指纹未变化的配置文件
+         *
+         * @param configFilenames 未变化的配置文件名
+         */
+        void retain(Set<String> configFilenames) {
+            copyPrevious(configFilenames, true);
+        }
+
+        /**
+         * 保留上一个快照中除指定配置文件外的全部配置项，直接复用其解析结果和已编译的灰度规则，
+         * 用于只重建发生变化的配置文件
+         *
+         * @param configFilenames 需要重建的配置文件名
+         */
+        void retainExcept(Set<String> configFilenames) {
+            copyPrevious(configFilenames, false);
+        }
+
+        private void copyPrevious(Set<String> configFilenames, boolean contained) {
+            final ConfigTable table = previous.configTable;
+            for (int entry = 0; entry < table.size(); ++entry) {
+                if (configFilenames.contains(table.filenameAt(entry)) == contained) {
+                    tableBuilder.putFrom(table, entry);
+                }
+            }
+            for (final Map.Entry<String, Long> file : previous.fileFingerprints.entrySet()) {
+                if (configFilenames.contains(file.getKey()) == contained) {
+                    fileFingerprints.put(file.getKey(), file.getValue());
+                }
+            }
+        }
+
+        /**
+         * @return 构建结果是否与上一个快照的配置项完全相同，此时无需替换快照
+         */
+        boolean isUnchanged() {
+            return !modified && tableBuilder.size() == previous.configTable.size();
+        }
+
+        ConfigSnapshot build(long version) {
+            return new ConfigSnapshot(version, tableBuilder.build(), fingerprint, fileFingerprints);
+        }
+    }
+}
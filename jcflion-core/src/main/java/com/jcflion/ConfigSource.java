@@ -0,0 +1,26 @@
+package com.jcflion;
+
+/**
+ * 配置源SPI：从外部存储读取应用配置，并在配置变化时推送给 {@link ConfigSink}。
+ * 本模块提供 FileConfigSource、ClasspathConfigSource 和 MemoryConfigSource，etcd配置源在 jcflion-etcd 模块中。
+ * 配置源交给 {@link ConfigLoader} 启动，也可以实现 {@link ConfigSourceProvider} 按地址的scheme发现
+ *
+ * @author kanner
+ */
+public interface ConfigSource extends AutoCloseable {
+
+    /**
+     * 开始提供配置：读取当前配置，之后持续推送配置变化，直到 close()。
+     * 只会被调用一次；首次读取可以在调用线程中同步完成，也可以在 sink.newThread() 创建的线程中完成
+     *
+     * @param sink 配置接收方
+     */
+    void start(ConfigSink sink);
+
+    /**
+     * 停止监听并释放资源，已加载的配置仍然可以读取
+     */
+    @Override
+    void close();
+
+}
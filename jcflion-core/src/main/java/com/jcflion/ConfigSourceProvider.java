@@ -0,0 +1,23 @@
+package com.jcflion;
+
+/**
+ * 按地址创建配置源，通过 ServiceLoader 从 META-INF/services/com.jcflion.ConfigSourceProvider 发现。
+ * 地址格式为 scheme:..., 如 file:/etc/app.conf、classpath:app.conf、etcd://127.0.0.1:2379/app1
+ *
+ * @author kanner
+ */
+public interface ConfigSourceProvider {
+
+    /**
+     * @return 支持的地址scheme，不含":"
+     */
+    String scheme();
+
+    /**
+     * @param location 完整地址，含scheme
+     * @return 未启动的配置源
+     * @throws IllegalArgumentException 地址不合法
+     */
+    ConfigSource create(String location);
+
+}
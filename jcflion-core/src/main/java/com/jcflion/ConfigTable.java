@@ -0,0 +1,447 @@
+package com.jcflion;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 只读的开放寻址配置表，以(配置文件名, 配置名)为键，构建完成后不再修改。
+ * 槽位的哈希值与 (configFilename + "." + key).hashCode() 一致，
+ * 因此既可以用两段名称查询，也可以直接用 configName 查询而无需截取子串。
+ * <p>
+ * 内存布局：开放寻址的索引只存放条目下标，条目按插入顺序紧凑存放；
+ * 所有配置名连续存放在一个字节数组中(与 String 相同，全部为Latin-1字符时每个字符一个字节，否则为UTF-16)，
+ * 不为每个配置名创建 String，只有遍历时才按需创建
+ *
+ * @author kanner
+ */
+final class ConfigTable {
+
+    private static final byte LATIN1 = 0;
+
+    private static final byte UTF16 = 1;
+
+    static final ConfigTable EMPTY = new Builder(0).build();
+
+    /**
+     * 开放寻址索引，存放条目下标加一，0为空槽位
+     */
+    private final int[] index;
+
+    private final int mask;
+
+    private final String[] filenames;
+
+    private final ConfigValue[] values;
+
+    private final int[] hashes;
+    /**
+     * 第i个配置名的字符位于 [keyEnds[i - 1], keyEnds[i])，第0个从0开始
+     */
+    private final int[] keyEnds;
+
+    private final byte[] keyBytes;
+
+    private final byte coder;
+
+    private final int size;
+
+    private ConfigTable(int[] index, String[] filenames, ConfigValue[] values, int[] hashes,
+                        int[] keyEnds, byte[] keyBytes, byte coder, int size) {
+        this.index = index;
+        this.mask = index.length - 1;
+        this.filenames = filenames;
+        this.values = values;
+        this.hashes = hashes;
+        this.keyEnds = keyEnds;
+        this.keyBytes = keyBytes;
+        this.coder = coder;
+        this.size = size;
+    }
+
+    /**
+     * 根据配置文件名和配置名查询
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @return 配置值，不存在时返回null
+     */
+    ConfigValue get(String configFilename, String key) {
+        if (null == configFilename || null == key) {
+            return null;
+        }
+        final int hash = hash(configFilename, key);
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int entry = index[slot] - 1;
+            if (entry < 0) {
+                return null;
+            }
+            if (hashes[entry] == hash && filenames[entry].equals(configFilename) && keyMatches(entry, key, 0, key.length())) {
+                return values[entry];
+            }
+        }
+    }
+
+    /**
+     * 根据配置项名查询，以第一个"."分隔配置文件名和配置名
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @return 配置值，不存在时返回null
+     */
+    ConfigValue get(String configName) {
+        if (null == configName) {
+            return null;
+        }
+        final int dot = configName.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        final int hash = configName.hashCode();
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int entry = index[slot] - 1;
+            if (entry < 0) {
+                return null;
+            }
+            final String filename = filenames[entry];
+            if (hashes[entry] == hash
+                    && dot == filename.length()
+                    && configName.regionMatches(0, filename, 0, dot)
+                    && keyMatches(entry, configName, dot + 1, configName.length() - dot - 1)) {
+                return values[entry];
+            }
+        }
+    }
+
+    /**
+     * 查询另一个表中第entry个条目在本表中的配置值，不创建配置名字符串
+     *
+     * @param other 另一个表
+     * @param entry 另一个表中的条目下标
+     * @return 配置值，不存在时返回null
+     */
+    ConfigValue get(ConfigTable other, int entry) {
+        final int hash = other.hashes[entry];
+        final String configFilename = other.filenames[entry];
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int candidate = index[slot] - 1;
+            if (candidate < 0) {
+                return null;
+            }
+            if (hashes[candidate] == hash && filenames[candidate].equals(configFilename)
+                    && keyEquals(keyBytes, coder, keyStart(candidate), keyEnds[candidate],
+                    other.keyBytes, other.coder, other.keyStart(entry), other.keyEnds[entry])) {
+                return values[candidate];
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 第entry个条目的配置文件名，配合 keyAt/valueAt 按插入顺序遍历，entry小于 size()
+     */
+    String filenameAt(int entry) {
+        return filenames[entry];
+    }
+
+    /**
+     * 第entry个条目的配置名，每次调用都会创建新的字符串
+     */
+    String keyAt(int entry) {
+        final int start = keyStart(entry);
+        if (LATIN1 == coder) {
+            return new String(keyBytes, start, keyEnds[entry] - start, StandardCharsets.ISO_8859_1);
+        }
+        final char[] chars = new char[keyEnds[entry] - start];
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = charAt(keyBytes, UTF16, start + i);
+        }
+        return new String(chars);
+    }
+
+    ConfigValue valueAt(int entry) {
+        return values[entry];
+    }
+
+    private int keyStart(int entry) {
+        return 0 == entry ? 0 : keyEnds[entry - 1];
+    }
+
+    private boolean keyMatches(int entry, String s, int from, int length) {
+        final int start = keyStart(entry);
+        if (keyEnds[entry] - start != length) {
+            return false;
+        }
+        if (LATIN1 == coder) {
+            for (int i = 0; i < length; ++i) {
+                if ((keyBytes[start + i] & 0xFF) != s.charAt(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (charAt(keyBytes, UTF16, start + i) != s.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean keyEquals(byte[] bytes, byte coder, int start, int end,
+                                     byte[] otherBytes, byte otherCoder, int otherStart, int otherEnd) {
+        if (end - start != otherEnd - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < end - start; ++i) {
+            if (charAt(bytes, coder, start + i) != charAt(otherBytes, otherCoder, otherStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char charAt(byte[] bytes, byte coder, int pos) {
+        if (LATIN1 == coder) {
+            return (char) (bytes[pos] & 0xFF);
+        }
+        return (char) (((bytes[pos << 1] & 0xFF) << 8) | (bytes[(pos << 1) + 1] & 0xFF));
+    }
+
+    /**
+     * 等价于 (configFilename + "." + key).hashCode()，但不拼接字符串
+     */
+    static int hash(String configFilename, String key) {
+        int h = configFilename.hashCode() * 31 + '.';
+        int pow = 1;
+        int base = 31;
+        for (int n = key.length(); n > 0; n >>>= 1) {
+            if ((n & 1) != 0) {
+                pow *= base;
+            }
+            base *= base;
+        }
+        return h * pow + key.hashCode();
+    }
+
+    private static int spread(int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(size * 16 + 2).append('{');
+        for (int entry = 0; entry < size; ++entry) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(filenames[entry]).append('.');
+            for (int i = keyStart(entry); i < keyEnds[entry]; ++i) {
+                sb.append(charAt(keyBytes, coder, i));
+            }
+            sb.append('=').append(values[entry]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 配置表构建器，同一个键重复写入时保留最后一次的值
+     */
+    static final class Builder {
+
+        private int[] index;
+
+        private String[] filenames;
+
+        private ConfigValue[] values;
+
+        private int[] hashes;
+
+        private int[] keyEnds;
+
+        private byte[] keyBytes;
+
+        private byte coder = LATIN1;
+        /**
+         * 已写入的配置名字符数
+         */
+        private int keyLength;
+
+        private int size;
+
+        Builder(int expectedSize) {
+            int capacity = 2;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            index = new int[capacity];
+            final int entries = Math.max(expectedSize, 8);
+            filenames = new String[entries];
+            values = new ConfigValue[entries];
+            hashes = new int[entries];
+            keyEnds = new int[entries];
+            keyBytes = new byte[entries * 16];
+        }
+
+        void put(String configFilename, String key, ConfigValue value) {
+            final int hash = hash(configFilename, key);
+            final int mask = index.length - 1;
+            int slot = spread(hash) & mask;
+            for (; ; slot = (slot + 1) & mask) {
+                final int entry = index[slot] - 1;
+                if (entry < 0) {
+                    break;
+                }
+                if (hashes[entry] == hash && filenames[entry].equals(configFilename) && keyMatches(entry, key)) {
+                    values[entry] = value;
+                    return;
+                }
+            }
+            final int length = key.length();
+            if (LATIN1 == coder && !isLatin1(key)) {
+                inflate();
+            }
+            ensureKeyCapacity(length);
+            for (int i = 0; i < length; ++i) {
+                putChar(keyLength + i, key.charAt(i));
+            }
+            append(slot, configFilename, value, hash, keyLength + length);
+        }
+
+        /**
+         * 复制另一个表的第entry个条目，不创建配置名字符串
+         *
+         * @param table 另一个表
+         * @param entry 条目下标
+         */
+        void putFrom(ConfigTable table, int entry) {
+            final int hash = table.hashes[entry];
+            final String configFilename = table.filenames[entry];
+            final int start = table.keyStart(entry);
+            final int length = table.keyEnds[entry] - start;
+            final int mask = index.length - 1;
+            int slot = spread(hash) & mask;
+            for (; ; slot = (slot + 1) & mask) {
+                final int existing = index[slot] - 1;
+                if (existing < 0) {
+                    break;
+                }
+                if (hashes[existing] == hash && filenames[existing].equals(configFilename)
+                        && keyEquals(keyBytes, coder, 0 == existing ? 0 : keyEnds[existing - 1], keyEnds[existing],
+                        table.keyBytes, table.coder, start, start + length)) {
+                    values[existing] = table.values[entry];
+                    return;
+                }
+            }
+            if (LATIN1 == coder && UTF16 == table.coder) {
+                inflate();
+            }
+            ensureKeyCapacity(length);
+            for (int i = 0; i < length; ++i) {
+                putChar(keyLength + i, charAt(table.keyBytes, table.coder, start + i));
+            }
+            append(slot, configFilename, table.values[entry], hash, keyLength + length);
+        }
+
+        int size() {
+            return size;
+        }
+
+        ConfigTable build() {
+            final int keyByteLength = LATIN1 == coder ? keyLength : keyLength << 1;
+            final ConfigTable table = new ConfigTable(index, Arrays.copyOf(filenames, size), Arrays.copyOf(values, size),
+                    Arrays.copyOf(hashes, size), Arrays.copyOf(keyEnds, size), Arrays.copyOf(keyBytes, keyByteLength), coder, size);
+            index = null;
+            filenames = null;
+            values = null;
+            hashes = null;
+            keyEnds = null;
+            keyBytes = null;
+            return table;
+        }
+
+        private void append(int slot, String configFilename, ConfigValue value, int hash, int keyEnd) {
+            if (size == filenames.length) {
+                final int entries = size + (size >> 1);
+                filenames = Arrays.copyOf(filenames, entries);
+                values = Arrays.copyOf(values, entries);
+                hashes = Arrays.copyOf(hashes, entries);
+                keyEnds = Arrays.copyOf(keyEnds, entries);
+            }
+            filenames[size] = configFilename;
+            values[size] = value;
+            hashes[size] = hash;
+            keyEnds[size] = keyEnd;
+            keyLength = keyEnd;
+            index[slot] = ++size;
+            if (size * 2 > index.length) {
+                resize();
+            }
+        }
+
+        private boolean keyMatches(int entry, String key) {
+            final int start = 0 == entry ? 0 : keyEnds[entry - 1];
+            if (keyEnds[entry] - start != key.length()) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); ++i) {
+                if (charAt(keyBytes, coder, start + i) != key.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void putChar(int pos, char c) {
+            if (LATIN1 == coder) {
+                keyBytes[pos] = (byte) c;
+            } else {
+                keyBytes[pos << 1] = (byte) (c >>> 8);
+                keyBytes[(pos << 1) + 1] = (byte) c;
+            }
+        }
+
+        private void ensureKeyCapacity(int length) {
+            final int required = LATIN1 == coder ? keyLength + length : (keyLength + length) << 1;
+            if (required > keyBytes.length) {
+                keyBytes = Arrays.copyOf(keyBytes, Math.max(required, keyBytes.length + (keyBytes.length >> 1)));
+            }
+        }
+
+        /**
+         * 出现非Latin-1字符时把已写入的配置名转为UTF-16
+         */
+        private void inflate() {
+            final byte[] inflated = new byte[Math.max(keyBytes.length, 16) << 1];
+            for (int i = 0; i < keyLength; ++i) {
+                inflated[(i << 1) + 1] = keyBytes[i];
+            }
+            keyBytes = inflated;
+            coder = UTF16;
+        }
+
+        private void resize() {
+            final int[] resized = new int[index.length << 1];
+            final int mask = resized.length - 1;
+            for (int entry = 0; entry < size; ++entry) {
+                int slot = spread(hashes[entry]) & mask;
+                while (0 != resized[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                resized[slot] = entry + 1;
+            }
+            index = resized;
+        }
+
+        private static boolean isLatin1(String s) {
+            for (int i = 0; i < s.length(); ++i) {
+                if (s.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.jcflion;
+
+import com.jcflion.gray.GrayConfig;
+import com.jcflion.metrics.ConfigMetrics;
+
+/**
+ * 快照中的一个配置值，在构建快照时一次性解析出各基本类型的值，
+ * 无法解析的类型记为"使用默认值"，读取时不再解析也不会抛出异常。
+ * 灰度规则同样在构建快照时编译
+ *
+ * @author kanner
+ */
+final class ConfigValue {
+
+    private static final int INT = 1;
+    private static final int LONG = 1 << 1;
+    private static final int SHORT = 1 << 2;
+    private static final int DOUBLE = 1 << 3;
+    private static final int FLOAT = 1 << 4;
+    private static final int BOOLEAN_TRUE = 1 << 5;
+
+    /**
+     * 原始配置值
+     */
+    final String raw;
+    /**
+     * 各类型是否解析成功的标记位
+     */
+    private final int flags;
+
+    private final long longValue;
+
+    private final double doubleValue;
+
+    private final float floatValue;
+    /**
+     * 编译后的灰度规则，配置值不是灰度规则时为null
+     */
+    final GrayConfig grayConfig;
+
+    private ConfigValue(String raw, int flags, long longValue, double doubleValue, float floatValue, GrayConfig grayConfig) {
+        this.raw = raw;
+        this.flags = flags;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.floatValue = floatValue;
+        this.grayConfig = grayConfig;
+    }
+
+    /**
+     * 解析配置值，解析结果与 StringUtil.convertXxx 保持一致
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @param raw 原始配置值
+     * @return 配置值
+     */
+    static ConfigValue parse(String configFilename, String key, String raw) {
+        int flags = 0;
+        long longValue = 0L;
+        double doubleValue = 0D;
+        float floatValue = 0F;
+        if (isInteger(raw)) {
+            try {
+                longValue = Long.parseLong(raw);
+                flags |= LONG;
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    flags |= INT;
+                }
+                if (longValue >= Short.MIN_VALUE && longValue <= Short.MAX_VALUE) {
+                    flags |= SHORT;
+                }
+            } catch (NumberFormatException e) {
+                // overflow, use default
+            }
+        }
+        if (mayBeFloatingPoint(raw)) {
+            try {
+                doubleValue = Double.parseDouble(raw);
+                floatValue = Float.parseFloat(raw);
+                flags |= DOUBLE | FLOAT;
+            } catch (NumberFormatException e) {
+                // not a number, use default
+            }
+        }
+        if (Boolean.parseBoolean(raw)) {
+            flags |= BOOLEAN_TRUE;
+        }
+        return new ConfigValue(raw, flags, longValue, doubleValue, floatValue, GrayConfig.parse(configFilename, key, raw));
+    }
+
+    int getInt(int defaultValue) {
+        if (0 != (flags & INT)) {
+            return (int) longValue;
+        }
+        ConfigMetrics.recordTypedParseFailure();
+        return defaultValue;
+    }
+
+    long getLong(long defaultValue) {
+        if (0 != (flags & LONG)) {
+            return longValue;
+        }
+        ConfigMetrics.recordTypedParseFailure();
+        return defaultValue;
+    }
+
+    short getShort(short defaultValue) {
+        if (0 != (flags & SHORT)) {
+            return (short) longValue;
+        }
+        ConfigMetrics.recordTypedParseFailure();
+        return defaultValue;
+    }
+
+    double getDouble(double defaultValue) {
+        if (0 != (flags & DOUBLE)) {
+            return doubleValue;
+        }
+        ConfigMetrics.recordTypedParseFailure();
+        return defaultValue;
+    }
+
+    float getFloat(float defaultValue) {
+        if (0 != (flags & FLOAT)) {
+            return floatValue;
+        }
+        ConfigMetrics.recordTypedParseFailure();
+        return defaultValue;
+    }
+
+    boolean getBoolean() {
+        return 0 != (flags & BOOLEAN_TRUE);
+    }
+
+    /**
+     * 与 Long.parseLong 相同的语法：可选的正负号加至少一位数字
+     */
+    private static boolean isInteger(String s) {
+        final int len = s.length();
+        int i = 0;
+        if (len > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            i = 1;
+        }
+        if (i == len) {
+            return false;
+        }
+        for (; i < len; ++i) {
+            if (Character.digit(s.charAt(i), 10) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 粗略过滤明显不是浮点数的值，避免对普通字符串抛出并捕获异常
+     */
+    private static boolean mayBeFloatingPoint(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        final char c = s.charAt(0);
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'N' || c == 'I';
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+}
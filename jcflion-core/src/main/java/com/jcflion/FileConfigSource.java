@@ -0,0 +1,271 @@
+package com.jcflion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从本地文件读取配置，并通过 WatchService 监听所在目录，文件变化时重新加载。
+ * <ul>
+ *     <li>path为文件时，文件内容为完整的应用配置文本，含"[配置文件名]"行</li>
+ *     <li>path为目录时，目录下每个文件对应一个配置文件，配置文件名为文件名中第一个"."之前的部分，
+ *     文件内容不含"[配置文件名]"行；以"."开头的文件被忽略。只重建变化的配置文件</li>
+ * </ul>
+ * 文件通过内存映射读取，解析时不复制到堆内；内容未变化的文件由指纹直接跳过，重复的文件事件不会重建快照。
+ * 更新文件时应先写临时文件再原子替换，原地截断重写的文件在读取过程中可能读到不完整的内容，此时等待下一次变化重新加载
+ *
+ * @author kanner
+ */
+public final class FileConfigSource implements ConfigSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileConfigSource.class);
+
+    /**
+     * 一次保存或原子替换会产生多个事件，事件停止这么久之后再加载
+     */
+    private static final long SETTLE_MILLIS = 50L;
+
+    private final Path path;
+    /**
+     * 目录模式下已加载的配置文件名，仅在启动线程和监听线程中访问
+     */
+    private final Set<String> configFilenames = new HashSet<>();
+
+    private boolean directory;
+
+    private ConfigSink sink;
+
+    private WatchService watchService;
+
+    private boolean closed;
+
+    /**
+     * @param path 配置文件或配置目录
+     */
+    public FileConfigSource(Path path) {
+        if (null == path) {
+            throw new IllegalArgumentException("path is null");
+        }
+        this.path = path.toAbsolutePath();
+    }
+
+    /**
+     * 同步加载当前配置后开始监听。启动时文件不存在或无法读取则初始化失败，之后出现的文件仍会被加载
+     */
+    @Override
+    public synchronized void start(ConfigSink sink) {
+        if (closed) {
+            return;
+        }
+        this.sink = sink;
+        directory = Files.isDirectory(path);
+        try {
+            load();
+        } catch (IOException e) {
+            sink.fail("load config file fail, path=" + path, e);
+        }
+        final Path dir = directory ? path : path.getParent();
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            sink.fail("watch config file fail, path=" + path, e);
+            return;
+        }
+        sink.newThread("cflion-config-file-watch", this::watch).start();
+    }
+
+    private void watch() {
+        final WatchService watchService;
+        synchronized (this) {
+            watchService = this.watchService;
+        }
+        try {
+            while (true) {
+                boolean changed = poll(watchService.take());
+                WatchKey key;
+                while (null != (key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS))) {
+                    changed |= poll(key);
+                }
+                if (!changed) {
+                    continue;
+                }
+                try {
+                    load();
+                } catch (IOException e) {
+                    LOGGER.warn("reload config file fail, keep current config, path={}", path, e);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.info("stop watching config file, path={}", path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 取出事件并重置key
+     *
+     * @return 是否需要重新加载
+     */
+    private boolean poll(WatchKey key) {
+        boolean changed = directory;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+                changed = true;
+                continue;
+            }
+            final String name = event.context().toString();
+            // 文件名相同，或是通过"..data"等符号链接整体替换的挂载目录(如Kubernetes ConfigMap)
+            if (name.equals(path.getFileName().toString()) || name.startsWith("..")) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void load() throws IOException {
+        if (directory) {
+            loadDirectory();
+            return;
+        }
+        final ByteBuffer content = map(path);
+        try {
+            sink.reload(content);
+        } catch (InternalError e) {
+            // 映射的文件在读取过程中被截断
+            LOGGER.warn("config file changed while loading, wait for next change, path={}", path, e);
+        }
+    }
+
+    /**
+     * 加载目录下的全部文件，已不存在的配置文件被删除，内容未变化的配置文件由指纹跳过
+     */
+    private void loadDirectory() throws IOException {
+        final Set<Path> paths = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (final Path file : stream) {
+                paths.add(file);
+            }
+        }
+        final Map<String, ByteBuffer> files = new HashMap<>(paths.size() * 2);
+        for (final Path file : paths) {
+            final String configFilename = configFilename(file);
+            if (null == configFilename || !Files.isRegularFile(file)) {
+                continue;
+            }
+            if (files.containsKey(configFilename)) {
+                LOGGER.warn("ignore duplicate config file, configFilename={}, file={}", configFilename, file);
+                continue;
+            }
+            try {
+                files.put(configFilename, map(file));
+            } catch (NoSuchFileException e) {
+                // 列出目录之后被删除
+            }
+        }
+        for (final String configFilename : configFilenames) {
+            if (!files.containsKey(configFilename)) {
+                files.put(configFilename, null);
+            }
+        }
+        configFilenames.clear();
+        for (final Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+            if (null != file.getValue()) {
+                configFilenames.add(file.getKey());
+            }
+        }
+        try {
+            sink.reloadFiles(files);
+        } catch (InternalError e) {
+            // 映射的文件在读取过程中被截断
+            LOGGER.warn("config file changed while loading, wait for next change, path={}", path, e);
+        }
+    }
+
+    /**
+     * @return 配置文件名，以"."开头或名称不合法时返回null
+     */
+    private static String configFilename(Path file) {
+        final String name = file.getFileName().toString();
+        if (name.startsWith(".")) {
+            return null;
+        }
+        final int dot = name.indexOf('.');
+        final String configFilename = (dot < 0 ? name : name.substring(0, dot)).trim();
+        if (configFilename.isEmpty() || configFilename.indexOf('[') >= 0 || configFilename.indexOf(']') >= 0) {
+            return null;
+        }
+        return configFilename;
+    }
+
+    /**
+     * 只读映射整个文件，映射在关闭channel后仍然有效，直到buffer被回收
+     */
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (null != watchService) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.warn("close watch service error, path={}", path, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileConfigSource [path=" + path + "]";
+    }
+
+    /**
+     * 处理 file:/etc/app1.conf、file:///etc/app1.conf 和 file:conf/app1.conf 形式的地址
+     */
+    public static final class Provider implements ConfigSourceProvider {
+
+        @Override
+        public String scheme() {
+            return "file";
+        }
+
+        @Override
+        public ConfigSource create(String location) {
+            final Path path = location.startsWith("file://")
+                    ? Paths.get(URI.create(location)) : Paths.get(location.substring("file:".length()));
+            return new FileConfigSource(path);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.jcflion;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 由应用代码直接提供配置文本的配置源，适合测试和由其他系统下发配置的场景。
+ * 启动前设置的配置在启动时加载，启动后的修改立即生效
+ *
+ * @author kanner
+ */
+public final class MemoryConfigSource implements ConfigSource {
+
+    /**
+     * 完整的应用配置文本，没有时为null
+     */
+    private String content;
+    /**
+     * 启动前单独设置的配置文件，文本为null表示删除
+     */
+    private final Map<String, String> files = new LinkedHashMap<>();
+
+    private ConfigSink sink;
+
+    private boolean closed;
+
+    public MemoryConfigSource() {
+
+    }
+
+    /**
+     * @param content 完整的应用配置文本，含"[配置文件名]"行
+     */
+    public MemoryConfigSource(String content) {
+        this.content = content;
+    }
+
+    @Override
+    public synchronized void start(ConfigSink sink) {
+        if (closed) {
+            return;
+        }
+        this.sink = sink;
+        if (null != content) {
+            sink.reload(toBuffer(content));
+        }
+        if (!files.isEmpty()) {
+            final Map<String, ByteBuffer> buffers = new LinkedHashMap<>(files.size() * 2);
+            for (final Map.Entry<String, String> file : files.entrySet()) {
+                buffers.put(file.getKey(), null == file.getValue() ? null : toBuffer(file.getValue()));
+            }
+            sink.reloadFiles(buffers);
+        }
+    }
+
+    /**
+     * 整体替换应用配置
+     *
+     * @param content 完整的应用配置文本，含"[配置文件名]"行
+     */
+    public synchronized void setContent(String content) {
+        this.content = content;
+        files.clear();
+        if (null != sink && null != content) {
+            sink.reload(toBuffer(content));
+        }
+    }
+
+    /**
+     * 替换单个配置文件，其他配置文件保持不变
+     *
+     * @param configFilename 配置文件名
+     * @param fileContent 配置文件文本，不含"[配置文件名]"行
+     */
+    public void putFile(String configFilename, String fileContent) {
+        if (null == configFilename || configFilename.isEmpty() || null == fileContent) {
+            throw new IllegalArgumentException("illegal config file, configFilename=" + configFilename + ", fileContent=" + fileContent);
+        }
+        updateFile(configFilename, fileContent);
+    }
+
+    /**
+     * 删除单个配置文件
+     *
+     * @param configFilename 配置文件名
+     */
+    public void removeFile(String configFilename) {
+        if (null == configFilename || configFilename.isEmpty()) {
+            throw new IllegalArgumentException("configFilename is empty");
+        }
+        updateFile(configFilename, null);
+    }
+
+    private synchronized void updateFile(String configFilename, String fileContent) {
+        if (null == sink) {
+            files.put(configFilename, fileContent);
+            return;
+        }
+        sink.reloadFiles(Collections.singletonMap(configFilename, null == fileContent ? null : toBuffer(fileContent)));
+    }
+
+    private static ByteBuffer toBuffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        sink = null;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryConfigSource";
+    }
+}
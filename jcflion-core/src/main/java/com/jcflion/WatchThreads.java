@@ -0,0 +1,25 @@
+package com.jcflion;
+
+/**
+ * 创建执行阻塞监听循环的默认线程：守护线程，不阻止JVM退出。
+ * JDK 21及以上版本使用 META-INF/versions/21 中的实现，改为虚拟线程
+ *
+ * @author kanner
+ */
+final class WatchThreads {
+
+    private WatchThreads() {}
+
+    /**
+     * 创建未启动的线程
+     *
+     * @param name 线程名
+     * @param task 任务
+     * @return 未启动的线程
+     */
+    static Thread newThread(String name, Runnable task) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,26 @@
+package com.jcflion.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记类型化的配置接口，编译时由 com.jcflion.processor.ConfigInterfaceProcessor 在同一包下生成实现类 接口名Impl，
+ * 嵌套接口的实现类名以"_"连接外层类名，如 Outer.Timeouts 生成 Outer_TimeoutsImpl。
+ * 接口中的每个抽象方法都必须标注 {@link ConfigItem}，没有参数，返回类型为 String、boolean、short、int、long、float、double 之一
+ *
+ * @author kanner
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface ConfigFile {
+
+    /**
+     * @return 配置文件名
+     */
+    String value();
+
+}
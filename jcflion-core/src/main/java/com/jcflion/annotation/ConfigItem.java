@@ -0,0 +1,32 @@
+package com.jcflion.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记配置接口中的配置项，配置名和默认值在编译时校验
+ *
+ * @author kanner
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.CLASS)
+public @interface ConfigItem {
+
+    /**
+     * @return 配置名
+     */
+    String value();
+
+    /**
+     * 配置项不存在或无法解析时的返回结果，必须能解析为方法的返回类型，boolean只接受"true"或"false"。
+     * 为空时String返回null，数值返回0，boolean返回false
+     *
+     * @return 默认配置值
+     */
+    String defaultValue() default "";
+
+}
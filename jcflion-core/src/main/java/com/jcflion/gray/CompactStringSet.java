@@ -0,0 +1,199 @@
+package com.jcflion.gray;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 只读的紧凑字符串集合，用于很大的灰度名单。
+ * 所有名单按UTF-8字节序排序后连续存放在一个字节数组中，查询时二分查找，
+ * 比较时边编码边比较，不分配对象。每个元素只占用其UTF-8字节数加4字节偏移量
+ *
+ * @author kanner
+ */
+final class CompactStringSet extends AbstractSet<String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 所有名单的UTF-8字节
+     */
+    private final byte[] arena;
+    /**
+     * 第i个名单位于 [offsets[i], offsets[i + 1])
+     */
+    private final int[] offsets;
+
+    private CompactStringSet(byte[] arena, int[] offsets) {
+        this.arena = arena;
+        this.offsets = offsets;
+    }
+
+    /**
+     * 构建紧凑集合，名单中包含不成对的代理字符时无法按UTF-8无损存储，返回null
+     *
+     * @param names 名单
+     * @return 紧凑集合
+     */
+    static CompactStringSet of(Collection<String> names) {
+        final byte[][] encoded = new byte[names.size()][];
+        int count = 0;
+        long total = 0L;
+        for (final String name : names) {
+            if (hasUnpairedSurrogate(name)) {
+                return null;
+            }
+            encoded[count] = name.getBytes(StandardCharsets.UTF_8);
+            total += encoded[count].length;
+            ++count;
+        }
+        if (total > Integer.MAX_VALUE) {
+            return null;
+        }
+        Arrays.sort(encoded, 0, count, CompactStringSet::compareBytes);
+        final byte[] arena = new byte[(int) total];
+        final int[] offsets = new int[count + 1];
+        int size = 0;
+        int position = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i > 0 && 0 == compareBytes(encoded[i - 1], encoded[i])) {
+                continue;
+            }
+            System.arraycopy(encoded[i], 0, arena, position, encoded[i].length);
+            offsets[size++] = position;
+            position += encoded[i].length;
+        }
+        offsets[size] = position;
+        return new CompactStringSet(Arrays.copyOf(arena, position), Arrays.copyOf(offsets, size + 1));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        final String name = (String) o;
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compare(name, offsets[mid], offsets[mid + 1]);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < offsets.length - 1;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int from = offsets[index];
+                final int to = offsets[++index];
+                return new String(arena, from, to - from, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * 将name按UTF-8编码后与 arena[from, to) 按无符号字节序比较
+     */
+    private int compare(String name, int from, int to) {
+        int position = from;
+        final int len = name.length();
+        for (int i = 0; i < len; ) {
+            final int cp = name.codePointAt(i);
+            i += Character.charCount(cp);
+            int cmp;
+            if (cp < 0x80) {
+                if (position == to) {
+                    return 1;
+                }
+                cmp = cp - (arena[position++] & 0xFF);
+            } else {
+                final int bytes = cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+                cmp = 0;
+                for (int k = 0; k < bytes && 0 == cmp; ++k) {
+                    if (position == to) {
+                        return 1;
+                    }
+                    cmp = utf8Byte(cp, bytes, k) - (arena[position++] & 0xFF);
+                }
+            }
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return position == to ? 0 : -1;
+    }
+
+    /**
+     * 码点cp按UTF-8编码为bytes个字节时的第k个字节
+     */
+    private static int utf8Byte(int cp, int bytes, int k) {
+        if (0 == k) {
+            switch (bytes) {
+                case 2:
+                    return 0xC0 | (cp >>> 6);
+                case 3:
+                    return 0xE0 | (cp >>> 12);
+                default:
+                    return 0xF0 | (cp >>> 18);
+            }
+        }
+        return 0x80 | ((cp >>> (6 * (bytes - 1 - k))) & 0x3F);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        final int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; ++i) {
+            final int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static boolean hasUnpairedSurrogate(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (Character.isHighSurrogate(c)) {
+                if (i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    ++i;
+                } else {
+                    return true;
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
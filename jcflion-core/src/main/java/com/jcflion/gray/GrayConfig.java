@@ -0,0 +1,380 @@
+package com.jcflion.gray;
+
+import com.jcflion.metrics.ConfigMetrics;
+import com.jcflion.metrics.GrayRuleMetrics;
+import com.jcflion.util.CollectionUtil;
+import com.jcflion.util.HashUtil;
+import com.jcflion.util.StringUtil;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 灰度策略，在构建配置快照时编译，编译后不可变。
+ * 规则格式：allow|deny[;名单;%取模;pct:百分比[:盐]]，其中 pct 按万分比精度(最多两位小数)划分流量，
+ * 同一个id在不同盐下落入相互独立的人群，未指定盐时使用配置项名
+ *
+ * @author kanner
+ */
+public final class GrayConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 100%对应的万分比
+     */
+    public static final int BASIS_POINTS_FULL = 10000;
+
+    private static final String ROLLOUT_PREFIX = "pct:";
+
+    /**
+     * 配置项名：configFilename.key
+     */
+    private final String configName;
+    /**
+     * 规则类型
+     */
+    private final RuleType type;
+    /**
+     * 名单列表
+     */
+    private final GrayNameSet nameSet;
+    /**
+     * 取模规则列表
+     */
+    private final Set<Long> percentSet;
+    /**
+     * 排序去重后的取模规则，从小到大，命中率高的模数先判断
+     */
+    private final long[] moduli;
+    /**
+     * 按哈希划分的流量比例，单位万分之一，未配置时为-1
+     */
+    private final int rolloutBasisPoints;
+    /**
+     * 流量划分的盐
+     */
+    private final String rolloutSalt;
+    /**
+     * 由盐计算出的哈希种子
+     */
+    private final long rolloutSeed;
+    /**
+     * 哈希值(无符号)小于该阈值即命中，等于 floor(rolloutBasisPoints * 2^64 / 10000)
+     */
+    private final long rolloutThreshold;
+    /**
+     * 该规则的计数器，关闭计数时为null
+     */
+    private final transient GrayRuleMetrics metrics;
+
+    public GrayConfig(String configName, RuleType type, Set<String> nameSet, Set<Long> percentSet) {
+        this(configName, type, nameSet, percentSet, -1, null);
+    }
+
+    public GrayConfig(String configName, RuleType type, Set<String> nameSet, Set<Long> percentSet,
+                      int rolloutBasisPoints, String rolloutSalt) {
+        if (rolloutBasisPoints > BASIS_POINTS_FULL) {
+            throw new IllegalArgumentException("rolloutBasisPoints must not exceed " + BASIS_POINTS_FULL);
+        }
+        this.configName = configName;
+        this.type = type;
+        this.nameSet = null == nameSet ? null : GrayNameSet.of(nameSet);
+        this.percentSet = null == percentSet ? null : Collections.unmodifiableSet(percentSet);
+        this.moduli = toModuli(percentSet);
+        this.rolloutBasisPoints = rolloutBasisPoints < 0 ? -1 : rolloutBasisPoints;
+        this.rolloutSalt = this.rolloutBasisPoints < 0 ? null : (null == rolloutSalt ? configName : rolloutSalt);
+        this.rolloutSeed = null == this.rolloutSalt ? 0L : HashUtil.hash64(this.rolloutSalt, 0L);
+        this.rolloutThreshold = this.rolloutBasisPoints <= 0 || this.rolloutBasisPoints == BASIS_POINTS_FULL ? 0L
+                : BigInteger.valueOf(this.rolloutBasisPoints).shiftLeft(64)
+                        .divide(BigInteger.valueOf(BASIS_POINTS_FULL)).longValue();
+        this.metrics = ConfigMetrics.grayRule(configName);
+    }
+
+    /**
+     * 编译灰度规则，格式：allow|deny[;名单或%取模;...]
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @param value 配置值
+     * @return 灰度策略，配置值不是灰度规则时返回null
+     */
+    public static GrayConfig parse(String configFilename, String key, String value) {
+        if (!mayBeRule(value)) {
+            return null;
+        }
+        final String[] arr = StringUtil.splitFirst(value.trim(), ";");
+        if (CollectionUtil.isEmpty(arr)) {
+            return null;
+        }
+        final RuleType ruleType = RuleType.parse(arr[0].trim());
+        if (null == ruleType) {
+            return null;
+        }
+        Set<Long> percentSet = null;
+        Set<String> nameSet = null;
+        int rolloutBasisPoints = -1;
+        String rolloutSalt = null;
+        if (arr.length > 1) {
+            final String grayContent = arr[1].trim();
+            if (StringUtil.isNotEmpty(grayContent)) {
+                final String[] grayItems = StringUtil.split(grayContent, ";");
+                if (CollectionUtil.isNotEmpty(grayItems)) {
+                    percentSet = new HashSet<>(grayItems.length);
+                    nameSet = new HashSet<>(grayItems.length);
+                    for (final String grayItem : grayItems) {
+                        if (StringUtil.isEmpty(grayItem)) {
+                            continue;
+                        }
+                        if (grayItem.startsWith(ROLLOUT_PREFIX)) {
+                            // rollout: pct:percent[:salt]
+                            final String[] rollout = StringUtil.splitFirst(grayItem.substring(ROLLOUT_PREFIX.length()), ":");
+                            final int basisPoints = parseBasisPoints(rollout[0].trim());
+                            if (basisPoints < 0) {
+                                continue;
+                            }
+                            rolloutBasisPoints = basisPoints;
+                            rolloutSalt = rollout.length > 1 && StringUtil.isNotEmpty(rollout[1]) ? rollout[1].trim() : null;
+                        } else if (grayItem.startsWith("%")) {
+                            // percent
+                            final String percent = StringUtil.removeFirst(grayItem, "%");
+                            if (StringUtil.isEmpty(percent)) {
+                                continue;
+                            }
+                            try {
+                                final long modulus = Long.parseLong(percent);
+                                if (0L != modulus) { // 对0取模没有意义
+                                    percentSet.add(modulus);
+                                }
+                            } catch (NumberFormatException e) {
+                                continue;
+                            }
+                        } else {
+                            // name
+                            nameSet.add(grayItem);
+                        }
+                    }
+                    if (percentSet.isEmpty()) {
+                        percentSet = null;
+                    }
+                    if (nameSet.isEmpty()) {
+                        nameSet = null;
+                    }
+                }
+            }
+        }
+        ConfigMetrics.recordGrayRuleCompiled();
+        return new GrayConfig(StringUtil.concat(configFilename, ".", key), ruleType, nameSet, percentSet,
+                rolloutBasisPoints, rolloutSalt);
+    }
+
+    /**
+     * 解析百分比为万分比，最多两位小数，范围[0, 100]
+     *
+     * @param percent 百分比，如 3.5
+     * @return 万分比，无法解析时返回-1
+     */
+    private static int parseBasisPoints(String percent) {
+        if (StringUtil.isEmpty(percent)) {
+            return -1;
+        }
+        try {
+            final BigDecimal basisPoints = new BigDecimal(percent).movePointRight(2);
+            if (basisPoints.signum() < 0 || basisPoints.compareTo(BigDecimal.valueOf(BASIS_POINTS_FULL)) > 0) {
+                return -1;
+            }
+            return basisPoints.intValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    private static long[] toModuli(Set<Long> percentSet) {
+        if (CollectionUtil.isEmpty(percentSet)) {
+            return new long[0];
+        }
+        final long[] values = new long[percentSet.size()];
+        int count = 0;
+        for (final Long percent : percentSet) {
+            if (null != percent && 0L != percent) {
+                values[count++] = percent;
+            }
+        }
+        final long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * id是否命中名单或取模规则
+     *
+     * @param id 要判断的id
+     * @return 是否命中
+     */
+    boolean hit(String id) {
+        if (null != nameSet && nameSet.contains(id)) {
+            return true;
+        }
+        if (moduli.length > 0) {
+            final long hashId = StringUtil.hash(id);
+            for (final long modulus : moduli) {
+                if (0L == hashId % modulus) {
+                    return true;
+                }
+            }
+        }
+        return rolloutBasisPoints > 0 && null != id && inRollout(HashUtil.hash64(id, rolloutSeed));
+    }
+
+    /**
+     * id是否命中名单或取模规则，不分配对象也不装箱
+     *
+     * @param id 要判断的id
+     * @return 是否命中
+     */
+    boolean hit(long id) {
+        if (null != nameSet && nameSet.contains(id)) {
+            return true;
+        }
+        for (final long modulus : moduli) {
+            if (0L == id % modulus) {
+                return true;
+            }
+        }
+        return rolloutBasisPoints > 0 && inRollout(HashUtil.hash64(id, rolloutSeed));
+    }
+
+    /**
+     * 批量判断 ids[from, to) 是否命中名单或取模规则，结果写入 hits 的相同下标。
+     * 每条规则对整段数组单独扫描一遍，内层循环没有分支和方法调用，便于JIT展开和向量化
+     *
+     * @param ids 要判断的id
+     * @param from 起始下标(包含)
+     * @param to 结束下标(不包含)
+     * @param hits 命中结果
+     */
+    void hitBatch(long[] ids, int from, int to, boolean[] hits) {
+        if (null != nameSet) {
+            for (int i = from; i < to; ++i) {
+                hits[i] = nameSet.contains(ids[i]);
+            }
+        }
+        for (final long modulus : moduli) {
+            for (int i = from; i < to; ++i) {
+                hits[i] |= 0L == ids[i] % modulus;
+            }
+        }
+        if (rolloutBasisPoints > 0) {
+            for (int i = from; i < to; ++i) {
+                hits[i] |= inRollout(HashUtil.hash64(ids[i], rolloutSeed));
+            }
+        }
+    }
+
+    /**
+     * 哈希值是否落在流量比例内，一次无符号比较
+     */
+    private boolean inRollout(long hash) {
+        return rolloutBasisPoints == BASIS_POINTS_FULL || Long.compareUnsigned(hash, rolloutThreshold) < 0;
+    }
+
+    /**
+     * 快速排除不以规则类型开头的配置值，避免对每个配置值都做切分
+     */
+    private static boolean mayBeRule(String value) {
+        if (StringUtil.isEmpty(value)) {
+            return false;
+        }
+        final char c = value.trim().charAt(0);
+        return c == 'a' || c == 'A' || c == 'd' || c == 'D';
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    public RuleType getType() {
+        return type;
+    }
+
+    public Set<String> getNameSet() {
+        return nameSet;
+    }
+
+    public Set<Long> getPercentSet() {
+        return percentSet;
+    }
+
+    public int getRolloutBasisPoints() {
+        return rolloutBasisPoints;
+    }
+
+    public String getRolloutSalt() {
+        return rolloutSalt;
+    }
+
+    GrayRuleMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "GrayConfig [configName=" + configName + ", type=" + type + ", nameSet=" + nameSet + ", percentSet=" + percentSet
+                + ", rolloutBasisPoints=" + rolloutBasisPoints + ", rolloutSalt=" + rolloutSalt + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((configName == null) ? 0 : configName.hashCode());
+        result = prime * result + ((nameSet == null) ? 0 : nameSet.hashCode());
+        result = prime * result + ((percentSet == null) ? 0 : percentSet.hashCode());
+        result = prime * result + ((type == null) ? 0 : type.hashCode());
+        result = prime * result + rolloutBasisPoints;
+        result = prime * result + ((rolloutSalt == null) ? 0 : rolloutSalt.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        GrayConfig other = (GrayConfig) obj;
+        if (configName == null) {
+            if (other.configName != null)
+                return false;
+        } else if (!configName.equals(other.configName))
+            return false;
+        if (nameSet == null) {
+            if (other.nameSet != null)
+                return false;
+        } else if (!nameSet.equals(other.nameSet))
+            return false;
+        if (percentSet == null) {
+            if (other.percentSet != null)
+                return false;
+        } else if (!percentSet.equals(other.percentSet))
+            return false;
+        if (type != other.type)
+            return false;
+        if (rolloutBasisPoints != other.rolloutBasisPoints)
+            return false;
+        if (rolloutSalt == null) {
+            if (other.rolloutSalt != null)
+                return false;
+        } else if (!rolloutSalt.equals(other.rolloutSalt))
+            return false;
+        return true;
+    }
+
+}
@@ -0,0 +1,364 @@
+package com.jcflion.gray;
+
+import com.jcflion.ConfigManager;
+import com.jcflion.ConfigSnapshot;
+import com.jcflion.metrics.ConfigMetrics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author kanner
+ */
+public final class GrayConfigManager {
+
+    /**
+     * 批量判断时超过该数量才并行计算，也是并行拆分的最小粒度
+     */
+    private static final int BATCH_PARALLEL_THRESHOLD = 1 << 14;
+
+    private GrayConfigManager() {}
+
+    /**
+     * 灰度判断id是否允许
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(String configName, String id) {
+        final GrayConfig grayConfig = ConfigManager.snapshot().getGrayConfig(configName);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(configName);
+            return false;
+        }
+        return isAllowed(grayConfig, id);
+    }
+
+    /**
+     * 灰度判断id是否允许
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(String configFilename, String key, String id) {
+        final GrayConfig grayConfig = ConfigManager.snapshot().getGrayConfig(configFilename, key);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(null);
+            return false;
+        }
+        return isAllowed(grayConfig, id);
+    }
+
+    /**
+     * 灰度判断id是否允许
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(String configName, long id) {
+        final GrayConfig grayConfig = ConfigManager.snapshot().getGrayConfig(configName);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(configName);
+            return false;
+        }
+        return isAllowed(grayConfig, id);
+    }
+
+    /**
+     * 灰度判断id是否允许
+     *
+     * @param configFilename 配置文件名
+     * @param key 配置名
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(String configFilename, String key, long id) {
+        final GrayConfig grayConfig = ConfigManager.snapshot().getGrayConfig(configFilename, key);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(null);
+            return false;
+        }
+        return isAllowed(grayConfig, id);
+    }
+
+    /**
+     * 在指定的配置快照上灰度判断id是否允许，用于同一请求内固定配置版本
+     *
+     * @param snapshot 配置快照
+     * @param configName 配置项格式：configFilename.key
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(ConfigSnapshot snapshot, String configName, String id) {
+        final GrayConfig grayConfig = snapshot.getGrayConfig(configName);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(configName);
+            return false;
+        }
+        return isAllowed(grayConfig, id);
+    }
+
+    /**
+     * 在指定的配置快照上灰度判断id是否允许，用于同一请求内固定配置版本
+     *
+     * @param snapshot 配置快照
+     * @param configName 配置项格式：configFilename.key
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(ConfigSnapshot snapshot, String configName, long id) {
+        final GrayConfig grayConfig = snapshot.getGrayConfig(configName);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(configName);
+            return false;
+        }
+        return isAllowed(grayConfig, id);
+    }
+
+    /**
+     * 批量灰度判断，规则只查询一次，数量较多时拆分到 ForkJoinPool.commonPool() 并行计算
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param ids 要判断是否允许灰度的id
+     * @return 与ids下标一一对应的判断结果
+     */
+    public static boolean[] isAllowedBatch(String configName, long[] ids) {
+        final GrayConfig grayConfig = ConfigManager.snapshot().getGrayConfig(configName);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(configName);
+            return new boolean[ids.length];
+        }
+        return isAllowedBatch(grayConfig, ids);
+    }
+
+    /**
+     * 批量灰度判断，规则只查询一次，数量较多时拆分到 ForkJoinPool.commonPool() 并行计算
+     *
+     * @param configName 配置项格式：configFilename.key
+     * @param ids 要判断是否允许灰度的id
+     * @return 与ids下标一一对应的判断结果
+     */
+    public static boolean[] isAllowedBatch(String configName, String[] ids) {
+        final GrayConfig grayConfig = ConfigManager.snapshot().getGrayConfig(configName);
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(configName);
+            return new boolean[ids.length];
+        }
+        return isAllowedBatch(grayConfig, ids);
+    }
+
+    /**
+     * 批量灰度判断
+     *
+     * @param grayConfig 灰度策略
+     * @param ids 要判断是否允许灰度的id
+     * @return 与ids下标一一对应的判断结果
+     */
+    public static boolean[] isAllowedBatch(GrayConfig grayConfig, long[] ids) {
+        final boolean[] result = new boolean[ids.length];
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(null);
+            return result;
+        }
+        if (null == grayConfig.getType() || 0 == ids.length) {
+            return result;
+        }
+        if (ids.length < BATCH_PARALLEL_THRESHOLD) {
+            evaluate(grayConfig, ids, 0, ids.length, result);
+        } else {
+            ForkJoinPool.commonPool().invoke(new LongBatchTask(grayConfig, ids, 0, ids.length, result));
+        }
+        recordDecisions(grayConfig, result);
+        return result;
+    }
+
+    /**
+     * 批量灰度判断
+     *
+     * @param grayConfig 灰度策略
+     * @param ids 要判断是否允许灰度的id
+     * @return 与ids下标一一对应的判断结果
+     */
+    public static boolean[] isAllowedBatch(GrayConfig grayConfig, String[] ids) {
+        final boolean[] result = new boolean[ids.length];
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(null);
+            return result;
+        }
+        if (null == grayConfig.getType() || 0 == ids.length) {
+            return result;
+        }
+        if (ids.length < BATCH_PARALLEL_THRESHOLD) {
+            evaluate(grayConfig, ids, 0, ids.length, result);
+        } else {
+            ForkJoinPool.commonPool().invoke(new StringBatchTask(grayConfig, ids, 0, ids.length, result));
+        }
+        recordDecisions(grayConfig, result);
+        return result;
+    }
+
+    private static void recordDecisions(GrayConfig grayConfig, boolean[] result) {
+        if (!ConfigMetrics.ENABLED) {
+            return;
+        }
+        long allowed = 0L;
+        for (final boolean isAllowed : result) {
+            if (isAllowed) {
+                ++allowed;
+            }
+        }
+        ConfigMetrics.recordGrayDecisions(grayConfig.getMetrics(), allowed, result.length - allowed);
+    }
+
+    private static void evaluate(GrayConfig grayConfig, long[] ids, int from, int to, boolean[] result) {
+        grayConfig.hitBatch(ids, from, to, result);
+        if (RuleType.ALLOW.equals(grayConfig.getType())) {
+            // allow, hit black list means deny
+            for (int i = from; i < to; ++i) {
+                result[i] = !result[i];
+            }
+        }
+    }
+
+    private static void evaluate(GrayConfig grayConfig, String[] ids, int from, int to, boolean[] result) {
+        final boolean allow = RuleType.ALLOW.equals(grayConfig.getType());
+        for (int i = from; i < to; ++i) {
+            result[i] = allow != grayConfig.hit(ids[i]);
+        }
+    }
+
+    /**
+     * 灰度判断id是否允许：allow规则下命中名单或取模的id被拒绝，deny规则下命中的id被允许
+     *
+     * @param grayConfig 灰度策略
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(GrayConfig grayConfig, String id) {
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(null);
+            return false;
+        }
+        if (null == grayConfig.getType()) {
+            return false;
+        }
+        final boolean isAllowed;
+        if (RuleType.ALLOW.equals(grayConfig.getType())) {
+            // allow, check black list
+            isAllowed = !grayConfig.hit(id);
+        } else {
+            // deny, check white list
+            isAllowed = grayConfig.hit(id);
+        }
+        ConfigMetrics.recordGrayDecision(grayConfig.getMetrics(), isAllowed);
+        return isAllowed;
+    }
+
+    /**
+     * 灰度判断id是否允许，数字id走原生long名单和取模规则，不分配对象
+     *
+     * @param grayConfig 灰度策略
+     * @param id 要判断是否允许灰度的id
+     * @return 是否允许
+     */
+    public static boolean isAllowed(GrayConfig grayConfig, long id) {
+        if (null == grayConfig) {
+            ConfigMetrics.recordGrayRuleMissing(null);
+            return false;
+        }
+        if (null == grayConfig.getType()) {
+            return false;
+        }
+        final boolean isAllowed;
+        if (RuleType.ALLOW.equals(grayConfig.getType())) {
+            // allow, check black list
+            isAllowed = !grayConfig.hit(id);
+        } else {
+            // deny, check white list
+            isAllowed = grayConfig.hit(id);
+        }
+        ConfigMetrics.recordGrayDecision(grayConfig.getMetrics(), isAllowed);
+        return isAllowed;
+    }
+
+    /**
+     * 灰度规则已随配置快照一起编译，快照替换即完成规则更新，无需再清理缓存
+     *
+     * @deprecated 保留该方法仅为兼容，调用无任何效果
+     */
+    @Deprecated
+    public static void resetGrayConfigCache() {
+    }
+
+    private static final class LongBatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GrayConfig grayConfig;
+
+        private final long[] ids;
+
+        private final int from;
+
+        private final int to;
+
+        private final boolean[] result;
+
+        LongBatchTask(GrayConfig grayConfig, long[] ids, int from, int to, boolean[] result) {
+            this.grayConfig = grayConfig;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_PARALLEL_THRESHOLD) {
+                evaluate(grayConfig, ids, from, to, result);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new LongBatchTask(grayConfig, ids, from, mid, result),
+                    new LongBatchTask(grayConfig, ids, mid, to, result));
+        }
+    }
+
+    private static final class StringBatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GrayConfig grayConfig;
+
+        private final String[] ids;
+
+        private final int from;
+
+        private final int to;
+
+        private final boolean[] result;
+
+        StringBatchTask(GrayConfig grayConfig, String[] ids, int from, int to, boolean[] result) {
+            this.grayConfig = grayConfig;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_PARALLEL_THRESHOLD) {
+                evaluate(grayConfig, ids, from, to, result);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new StringBatchTask(grayConfig, ids, from, mid, result),
+                    new StringBatchTask(grayConfig, ids, mid, to, result));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.jcflion.gray;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * 灰度名单，规范十进制形式的数字名单存放在long集合中，其余名单存放在字符串集合中。
+ * 数字id查询时既不需要 String.valueOf 也不需要装箱。
+ * 非数字名单超过 COMPACT_THRESHOLD 个时改用 CompactStringSet 存放，以节省内存
+ *
+ * @author kanner
+ */
+final class GrayNameSet extends AbstractSet<String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 非数字名单数量达到该值时使用紧凑存储
+     */
+    static final int COMPACT_THRESHOLD = 1024;
+
+    /**
+     * 数字名单，与 String.valueOf(long) 的结果一一对应
+     */
+    private final LongHashSet numericNames;
+    /**
+     * 非数字名单
+     */
+    private final Set<String> otherNames;
+
+    private GrayNameSet(LongHashSet numericNames, Set<String> otherNames) {
+        this.numericNames = numericNames;
+        this.otherNames = otherNames;
+    }
+
+    static GrayNameSet of(Collection<String> names) {
+        final long[] numeric = new long[names.size()];
+        int numericCount = 0;
+        final Set<String> others = new HashSet<>();
+        for (final String name : names) {
+            if (isCanonicalLong(name)) {
+                numeric[numericCount++] = Long.parseLong(name);
+            } else {
+                others.add(name);
+            }
+        }
+        return new GrayNameSet(new LongHashSet(numeric, numericCount), toOtherNames(others));
+    }
+
+    private static Set<String> toOtherNames(Set<String> others) {
+        if (others.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (others.size() >= COMPACT_THRESHOLD) {
+            final CompactStringSet compact = CompactStringSet.of(others);
+            if (null != compact) {
+                return compact;
+            }
+        }
+        return Collections.unmodifiableSet(others);
+    }
+
+    boolean contains(long id) {
+        return numericNames.contains(id);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        final String name = (String) o;
+        if (isCanonicalLong(name)) {
+            return numericNames.contains(Long.parseLong(name));
+        }
+        return otherNames.contains(name);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        final long[] numeric = numericNames.toArray();
+        final Iterator<String> others = otherNames.iterator();
+        return new Iterator<String>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < numeric.length || others.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (index < numeric.length) {
+                    return String.valueOf(numeric[index++]);
+                }
+                return others.next();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return numericNames.size() + otherNames.size();
+    }
+
+    /**
+     * 是否为 String.valueOf(long) 能够生成的字符串：无前导0、无正号、不是"-0"且不溢出
+     */
+    static boolean isCanonicalLong(String s) {
+        final int len = s.length();
+        if (0 == len || len > 20) {
+            return false;
+        }
+        final boolean negative = s.charAt(0) == '-';
+        int i = negative ? 1 : 0;
+        if (i == len) {
+            return false;
+        }
+        final char first = s.charAt(i);
+        if (first == '0') {
+            return len == 1;
+        }
+        if (first < '1' || first > '9') {
+            return false;
+        }
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0L;
+        for (; i < len; ++i) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            if (result < limit / 10) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + (c - '0')) {
+                return false;
+            }
+            result -= c - '0';
+        }
+        return true;
+    }
+}
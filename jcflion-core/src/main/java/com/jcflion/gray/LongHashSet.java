@@ -0,0 +1,109 @@
+package com.jcflion.gray;
+
+import java.io.Serializable;
+
+/**
+ * 只读的long开放寻址集合，查询时不装箱也不分配对象
+ *
+ * @author kanner
+ */
+final class LongHashSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 0作为空槽位标记，集合是否包含0单独记录
+     */
+    private final long[] table;
+
+    private final int mask;
+
+    private final boolean containsZero;
+
+    private final int size;
+
+    LongHashSet(long[] values, int length) {
+        int capacity = 2;
+        while (capacity < length * 2) {
+            capacity <<= 1;
+        }
+        final long[] newTable = new long[capacity];
+        final int newMask = capacity - 1;
+        boolean zero = false;
+        int count = 0;
+        for (int i = 0; i < length; ++i) {
+            final long value = values[i];
+            if (0L == value) {
+                if (!zero) {
+                    zero = true;
+                    ++count;
+                }
+                continue;
+            }
+            for (int slot = mix(value) & newMask; ; slot = (slot + 1) & newMask) {
+                final long current = newTable[slot];
+                if (0L == current) {
+                    newTable[slot] = value;
+                    ++count;
+                    break;
+                }
+                if (current == value) {
+                    break;
+                }
+            }
+        }
+        this.table = newTable;
+        this.mask = newMask;
+        this.containsZero = zero;
+        this.size = count;
+    }
+
+    boolean contains(long value) {
+        if (0L == value) {
+            return containsZero;
+        }
+        for (int slot = mix(value) & mask; ; slot = (slot + 1) & mask) {
+            final long current = table[slot];
+            if (current == value) {
+                return true;
+            }
+            if (0L == current) {
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 按槽位顺序导出全部元素
+     */
+    long[] toArray() {
+        final long[] values = new long[size];
+        int i = 0;
+        if (containsZero) {
+            values[i++] = 0L;
+        }
+        for (final long value : table) {
+            if (0L != value) {
+                values[i++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * murmur3 fmix64，保证连续id也能均匀分布到各槽位
+     */
+    private static int mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,315 @@
+package com.jcflion.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 配置读取和灰度判断的计数器，基于 LongAdder 分段计数，热点路径上几乎没有竞争。
+ * 启动参数 -Dcflion.metrics.disabled=true 可完全关闭计数(JIT会消除相关代码)，
+ * -Dcflion.metrics.jmx=false 可只关闭JMX注册
+ *
+ * @author kanner
+ */
+public final class ConfigMetrics implements ConfigMetricsMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigMetrics.class);
+
+    /**
+     * 是否开启计数
+     */
+    public static final boolean ENABLED = !Boolean.getBoolean("cflion.metrics.disabled");
+
+    private static final boolean JMX_ENABLED = ENABLED && !"false".equalsIgnoreCase(System.getProperty("cflion.metrics.jmx"));
+
+    private static final String JMX_DOMAIN = "com.jcflion";
+
+    /**
+     * 单独计数的灰度规则数量上限，避免调用方传入大量不同的配置项名导致内存膨胀
+     */
+    private static final int MAX_GRAY_RULES = 4096;
+
+    private static final ConfigMetrics INSTANCE = new ConfigMetrics();
+
+    private static final LongAdder CONFIG_HITS = new LongAdder();
+
+    private static final LongAdder CONFIG_MISSES = new LongAdder();
+
+    private static final LongAdder DEFAULT_FALLBACKS = new LongAdder();
+
+    private static final LongAdder TYPED_PARSE_FAILURES = new LongAdder();
+
+    private static final LongAdder GRAY_ALLOWED = new LongAdder();
+
+    private static final LongAdder GRAY_DENIED = new LongAdder();
+
+    private static final LongAdder GRAY_RULE_MISSING = new LongAdder();
+
+    private static final LongAdder GRAY_RULES_COMPILED = new LongAdder();
+
+    private static final LongAdder RELOADS_SKIPPED = new LongAdder();
+
+    private static final ConcurrentHashMap<String, GrayRuleMetrics> GRAY_RULE_METRICS = new ConcurrentHashMap<>();
+
+    private static final CopyOnWriteArrayList<MetricsRegistry> REGISTRIES = new CopyOnWriteArrayList<>();
+
+    static {
+        if (JMX_ENABLED) {
+            registerMBean(INSTANCE, JMX_DOMAIN + ":type=ConfigMetrics");
+        }
+    }
+
+    private ConfigMetrics() {}
+
+    public static ConfigMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一次配置查询
+     *
+     * @param hit 是否查到配置项
+     */
+    public static void recordLookup(boolean hit) {
+        if (ENABLED) {
+            (hit ? CONFIG_HITS : CONFIG_MISSES).increment();
+        }
+    }
+
+    /**
+     * 记录一次因配置项不存在而返回默认值
+     */
+    public static void recordDefaultFallback() {
+        if (ENABLED) {
+            DEFAULT_FALLBACKS.increment();
+        }
+    }
+
+    /**
+     * 记录一次因配置值无法解析为目标类型而返回默认值
+     */
+    public static void recordTypedParseFailure() {
+        if (ENABLED) {
+            TYPED_PARSE_FAILURES.increment();
+            DEFAULT_FALLBACKS.increment();
+        }
+    }
+
+    /**
+     * 记录一次灰度规则编译，加载配置时只有新增或配置值变化的灰度规则会重新编译
+     */
+    public static void recordGrayRuleCompiled() {
+        if (ENABLED) {
+            GRAY_RULES_COMPILED.increment();
+        }
+    }
+
+    /**
+     * 记录一次因配置文本指纹未变化而跳过的加载
+     */
+    public static void recordReloadSkipped() {
+        if (ENABLED) {
+            RELOADS_SKIPPED.increment();
+        }
+    }
+
+    /**
+     * 记录一次未找到灰度规则的判断。只在已编译过的灰度规则上单独计数，
+     * 不会为调用方传入的任意配置项名创建计数器
+     *
+     * @param configName 配置项名，为null时只计入总数
+     */
+    public static void recordGrayRuleMissing(String configName) {
+        if (!ENABLED) {
+            return;
+        }
+        GRAY_RULE_MISSING.increment();
+        if (null != configName) {
+            final GrayRuleMetrics metrics = GRAY_RULE_METRICS.get(configName);
+            if (null != metrics) {
+                metrics.recordRuleMissing();
+            }
+        }
+    }
+
+    /**
+     * 记录一次灰度判断结果
+     *
+     * @param metrics 灰度规则的计数器，为null时只计入总数
+     * @param isAllowed 是否允许
+     */
+    public static void recordGrayDecision(GrayRuleMetrics metrics, boolean isAllowed) {
+        if (!ENABLED) {
+            return;
+        }
+        if (null != metrics) {
+            metrics.recordDecision(isAllowed);
+        }
+        (isAllowed ? GRAY_ALLOWED : GRAY_DENIED).increment();
+    }
+
+    /**
+     * 批量记录灰度判断结果
+     *
+     * @param metrics 灰度规则的计数器，为null时只计入总数
+     * @param allowedCount 允许的数量
+     * @param deniedCount 拒绝的数量
+     */
+    public static void recordGrayDecisions(GrayRuleMetrics metrics, long allowedCount, long deniedCount) {
+        if (!ENABLED) {
+            return;
+        }
+        if (null != metrics) {
+            metrics.recordDecisions(allowedCount, deniedCount);
+        }
+        GRAY_ALLOWED.add(allowedCount);
+        GRAY_DENIED.add(deniedCount);
+    }
+
+    /**
+     * 获取灰度规则的计数器，编译灰度规则时调用
+     *
+     * @param configName 配置项名
+     * @return 计数器，关闭计数或超出数量上限时返回null
+     */
+    public static GrayRuleMetrics grayRule(String configName) {
+        if (!ENABLED || null == configName) {
+            return null;
+        }
+        GrayRuleMetrics metrics = GRAY_RULE_METRICS.get(configName);
+        if (null != metrics || GRAY_RULE_METRICS.size() >= MAX_GRAY_RULES) {
+            return metrics;
+        }
+        final GrayRuleMetrics created = new GrayRuleMetrics(configName);
+        metrics = GRAY_RULE_METRICS.putIfAbsent(configName, created);
+        if (null != metrics) {
+            return metrics;
+        }
+        if (JMX_ENABLED) {
+            registerMBean(created, JMX_DOMAIN + ":type=GrayRuleMetrics,name=" + ObjectName.quote(configName));
+        }
+        for (final MetricsRegistry registry : REGISTRIES) {
+            bindGrayRule(registry, created);
+        }
+        return created;
+    }
+
+    /**
+     * 将全部计数器注册到外部指标系统，之后新出现的灰度规则计数器也会自动注册
+     *
+     * @param registry 外部指标系统
+     */
+    public static void bindTo(MetricsRegistry registry) {
+        if (null == registry) {
+            throw new IllegalArgumentException("registry is null");
+        }
+        if (!ENABLED) {
+            LOGGER.warn("cflion metrics are disabled, skip binding registry={}", registry);
+            return;
+        }
+        REGISTRIES.add(registry);
+        register(registry, "cflion.config.lookups", tags("result", "hit"), CONFIG_HITS::sum);
+        register(registry, "cflion.config.lookups", tags("result", "miss"), CONFIG_MISSES::sum);
+        register(registry, "cflion.config.default.fallbacks", tags(), DEFAULT_FALLBACKS::sum);
+        register(registry, "cflion.config.typed.parse.failures", tags(), TYPED_PARSE_FAILURES::sum);
+        register(registry, "cflion.gray.rules.compiled", tags(), GRAY_RULES_COMPILED::sum);
+        register(registry, "cflion.config.reloads.skipped", tags(), RELOADS_SKIPPED::sum);
+        // 总数包含超出数量上限和没有规则的判断；与单个规则的计数分开命名，按名称求和时不会重复计算
+        register(registry, "cflion.gray.decisions.all", tags("result", "allowed"), GRAY_ALLOWED::sum);
+        register(registry, "cflion.gray.decisions.all", tags("result", "denied"), GRAY_DENIED::sum);
+        register(registry, "cflion.gray.decisions.all", tags("result", "missing"), GRAY_RULE_MISSING::sum);
+        for (final GrayRuleMetrics metrics : GRAY_RULE_METRICS.values()) {
+            bindGrayRule(registry, metrics);
+        }
+    }
+
+    private static void bindGrayRule(MetricsRegistry registry, GrayRuleMetrics metrics) {
+        final String rule = metrics.getConfigName();
+        register(registry, "cflion.gray.decisions", tags("rule", rule, "result", "allowed"), metrics::getAllowed);
+        register(registry, "cflion.gray.decisions", tags("rule", rule, "result", "denied"), metrics::getDenied);
+        register(registry, "cflion.gray.decisions", tags("rule", rule, "result", "missing"), metrics::getRuleMissing);
+    }
+
+    private static void register(MetricsRegistry registry, String name, Map<String, String> tags, LongSupplier counter) {
+        try {
+            registry.registerCounter(name, tags, counter);
+        } catch (Exception e) {
+            LOGGER.error("register metric fail, name={}, tags={}", name, tags, e);
+        }
+    }
+
+    private static Map<String, String> tags(String... keyValues) {
+        final Map<String, String> tags = new HashMap<>(keyValues.length);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            tags.put(keyValues[i], keyValues[i + 1]);
+        }
+        return Collections.unmodifiableMap(tags);
+    }
+
+    private static void registerMBean(Object mbean, String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("register mbean fail, name={}", name, e);
+        }
+    }
+
+    @Override
+    public long getConfigHits() {
+        return CONFIG_HITS.sum();
+    }
+
+    @Override
+    public long getConfigMisses() {
+        return CONFIG_MISSES.sum();
+    }
+
+    @Override
+    public long getDefaultFallbacks() {
+        return DEFAULT_FALLBACKS.sum();
+    }
+
+    @Override
+    public long getTypedParseFailures() {
+        return TYPED_PARSE_FAILURES.sum();
+    }
+
+    @Override
+    public long getGrayAllowed() {
+        return GRAY_ALLOWED.sum();
+    }
+
+    @Override
+    public long getGrayDenied() {
+        return GRAY_DENIED.sum();
+    }
+
+    @Override
+    public long getGrayRuleMissing() {
+        return GRAY_RULE_MISSING.sum();
+    }
+
+    @Override
+    public long getGrayRulesCompiled() {
+        return GRAY_RULES_COMPILED.sum();
+    }
+
+    @Override
+    public long getReloadsSkipped() {
+        return RELOADS_SKIPPED.sum();
+    }
+}
@@ -0,0 +1,28 @@
+package com.jcflion.metrics;
+
+/**
+ * 配置读取和灰度判断的JMX指标
+ *
+ * @author kanner
+ */
+public interface ConfigMetricsMBean {
+
+    long getConfigHits();
+
+    long getConfigMisses();
+
+    long getDefaultFallbacks();
+
+    long getTypedParseFailures();
+
+    long getGrayAllowed();
+
+    long getGrayDenied();
+
+    long getGrayRuleMissing();
+
+    long getGrayRulesCompiled();
+
+    long getReloadsSkipped();
+
+}
@@ -0,0 +1,62 @@
+package com.jcflion.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单条灰度规则的判断计数，编译规则时取得，判断时无需再按配置项名查找
+ *
+ * @author kanner
+ */
+public final class GrayRuleMetrics implements GrayRuleMetricsMBean {
+
+    private final String configName;
+
+    private final LongAdder allowed = new LongAdder();
+
+    private final LongAdder denied = new LongAdder();
+
+    private final LongAdder ruleMissing = new LongAdder();
+
+    GrayRuleMetrics(String configName) {
+        this.configName = configName;
+    }
+
+    void recordDecision(boolean isAllowed) {
+        (isAllowed ? allowed : denied).increment();
+    }
+
+    void recordDecisions(long allowedCount, long deniedCount) {
+        allowed.add(allowedCount);
+        denied.add(deniedCount);
+    }
+
+    void recordRuleMissing() {
+        ruleMissing.increment();
+    }
+
+    @Override
+    public String getConfigName() {
+        return configName;
+    }
+
+    @Override
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    @Override
+    public long getDenied() {
+        return denied.sum();
+    }
+
+    @Override
+    public long getRuleMissing() {
+        return ruleMissing.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GrayRuleMetrics [configName=" + configName + ", allowed=" + getAllowed() + ", denied=" + getDenied()
+                + ", ruleMissing=" + getRuleMissing() + "]";
+    }
+}
@@ -0,0 +1,18 @@
+package com.jcflion.metrics;
+
+/**
+ * 单条灰度规则的JMX指标
+ *
+ * @author kanner
+ */
+public interface GrayRuleMetricsMBean {
+
+    String getConfigName();
+
+    long getAllowed();
+
+    long getDenied();
+
+    long getRuleMissing();
+
+}
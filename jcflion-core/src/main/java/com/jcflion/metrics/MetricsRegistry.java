@@ -0,0 +1,24 @@
+package com.jcflion.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 外部指标系统的适配接口，例如桥接到 Micrometer、Prometheus 等，
+ * 通过 ConfigMetrics.bindTo 注册后，所有计数器(包括之后新出现的灰度规则计数器)都会注册到该接口
+ *
+ * @author kanner
+ */
+@FunctionalInterface
+public interface MetricsRegistry {
+
+    /**
+     * 注册一个单调递增的计数器
+     *
+     * @param name 指标名
+     * @param tags 指标标签，不可修改
+     * @param counter 计数器当前值
+     */
+    void registerCounter(String name, Map<String, String> tags, LongSupplier counter);
+
+}
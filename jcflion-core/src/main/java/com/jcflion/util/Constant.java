@@ -9,4 +9,6 @@ public class Constant {
 
     public static final String CFLION_MANAGER_ENDPOINT = "CFLION_MANAGER_ENDPOINT";
 
+    public static final String CFLION_SNAPSHOT_DIR = "CFLION_SNAPSHOT_DIR";
+
 }
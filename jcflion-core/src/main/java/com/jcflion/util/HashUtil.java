@@ -0,0 +1,131 @@
+package com.jcflion.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 64位哈希：逐字符 FNV-1a，最后用 murmur3 的 fmix64 做雪崩混合，
+ * 连续id(如自增用户id)也能均匀分布。long的哈希值与其十进制字符串的哈希值相同
+ *
+ * @author kanner
+ */
+public final class HashUtil {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final long MURMUR_C1 = 0x87c37b91114253d5L;
+
+    private static final long MURMUR_C2 = 0x4cf5ad432745937fL;
+
+    private HashUtil() {}
+
+    /**
+     * 计算字符串的64位哈希
+     *
+     * @param s 字符串
+     * @param seed 种子
+     * @return 哈希值
+     */
+    public static long hash64(CharSequence s, long seed) {
+        long h = FNV_OFFSET_BASIS ^ seed;
+        final int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return fmix64(h);
+    }
+
+    /**
+     * 计算long的64位哈希，结果与 hash64(String.valueOf(value), seed) 相同，但不分配对象
+     *
+     * @param value 数值
+     * @param seed 种子
+     * @return 哈希值
+     */
+    public static long hash64(long value, long seed) {
+        long h = FNV_OFFSET_BASIS ^ seed;
+        if (value < 0) {
+            h = (h ^ '-') * FNV_PRIME;
+        }
+        // 统一用负数处理，避免 Long.MIN_VALUE 取反溢出
+        final long negative = value < 0 ? value : -value;
+        long divisor = 1L;
+        while (negative / divisor <= -10L) {
+            divisor *= 10L;
+        }
+        for (; divisor != 0L; divisor /= 10L) {
+            final int digit = (int) -((negative / divisor) % 10L);
+            h = (h ^ ('0' + digit)) * FNV_PRIME;
+        }
+        return fmix64(h);
+    }
+
+    /**
+     * 计算字节数组片段的64位哈希
+     *
+     * @param bytes 字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     * @param seed 种子
+     * @return 哈希值
+     */
+    public static long hash64(byte[] bytes, int offset, int length, long seed) {
+        long h = FNV_OFFSET_BASIS ^ seed;
+        for (int i = offset; i < offset + length; ++i) {
+            h = (h ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        return fmix64(h);
+    }
+
+    /**
+     * 计算buffer中 [from, to) 的64位指纹，用于判断配置文本是否变化。
+     * 按8字节一组混合(murmur3 x64的单路变体)，比逐字节的 hash64 快，但结果与 hash64 不同，不能混用
+     *
+     * @param buffer 字节，不会修改其position
+     * @param from 起始位置(绝对位置)
+     * @param to 结束位置(绝对位置，不含)
+     * @param seed 种子
+     * @return 指纹
+     */
+    public static long fingerprint64(ByteBuffer buffer, int from, int to, long seed) {
+        final ByteBuffer bytes = buffer.order() == ByteOrder.BIG_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        long h = seed;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            h ^= mixK(bytes.getLong(i));
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        if (i < to) {
+            long k = 0L;
+            for (int shift = 0; i < to; ++i, shift += 8) {
+                k |= (bytes.get(i) & 0xFFL) << shift;
+            }
+            h ^= mixK(k);
+        }
+        return fmix64(h ^ (to - from));
+    }
+
+    private static long mixK(long k) {
+        k *= MURMUR_C1;
+        k = Long.rotateLeft(k, 31);
+        return k * MURMUR_C2;
+    }
+
+    /**
+     * murmur3 fmix64
+     *
+     * @param h 输入
+     * @return 混合后的值
+     */
+    public static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
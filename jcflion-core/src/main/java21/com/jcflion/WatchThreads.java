@@ -0,0 +1,23 @@
+package com.jcflion;
+
+/**
+ * 创建执行阻塞监听循环的默认线程：JDK 21及以上版本使用虚拟线程，
+ * 阻塞在 watcher.listen() 上时不占用平台线程
+ *
+ * @author kanner
+ */
+final class WatchThreads {
+
+    private WatchThreads() {}
+
+    /**
+     * 创建未启动的虚拟线程
+     *
+     * @param name 线程名
+     * @param task 任务
+     * @return 未启动的线程
+     */
+    static Thread newThread(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+}
@@ -0,0 +1,138 @@
+package com.jcflion;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 新旧快照对比和监听器匹配的测试
+ *
+ * @author kanner
+ */
+public class ConfigListenersTest {
+
+    private final List<ConfigChangeListener> listeners = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpClass() {
+        ConfigManager.setListenerExecutor(Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        for (final ConfigChangeListener listener : listeners) {
+            ConfigManager.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void diffReportsAddedRemovedAndModified() {
+        ConfigManager.reloadConfigContent("[diffa]\nsame=1\nmodified=2\nremoved=3\n[diffb]\ngone=4\n");
+        final ConfigSnapshot oldSnapshot = ConfigManager.snapshot();
+        ConfigManager.reloadConfigContent("[diffa]\nsame=1\nmodified=20\nadded=5\n");
+        final ConfigSnapshot newSnapshot = ConfigManager.snapshot();
+
+        final Map<String, ConfigChangeEvent> events = byName(ConfigSnapshot.diff(oldSnapshot, newSnapshot));
+        assertEquals(events.keySet().toString(), 4, events.size());
+        assertFalse(events.containsKey("diffa.same"));
+
+        final ConfigChangeEvent modified = events.get("diffa.modified");
+        assertEquals("2", modified.getOldValue());
+        assertEquals("20", modified.getNewValue());
+        assertFalse(modified.isAdded() || modified.isDeleted());
+        assertEquals(oldSnapshot.getVersion(), modified.getOldVersion());
+        assertEquals(newSnapshot.getVersion(), modified.getNewVersion());
+
+        final ConfigChangeEvent added = events.get("diffa.added");
+        assertTrue(added.isAdded());
+        assertNull(added.getOldValue());
+        assertEquals("5", added.getNewValue());
+
+        for (final String name : new String[]{"diffa.removed", "diffb.gone"}) {
+            assertTrue(name, events.get(name).isDeleted());
+            assertNull(name, events.get(name).getNewValue());
+        }
+        assertEquals("3", events.get("diffa.removed").getOldValue());
+
+        // 相同快照没有变化
+        assertTrue(ConfigSnapshot.diff(newSnapshot, newSnapshot).isEmpty());
+    }
+
+    @Test
+    public void listenersOnlyReceiveMatchingChanges() {
+        ConfigManager.reloadConfigContent("[matcha]\nk=1\nkk=1\nx=1\n[matchab]\nk=1\n[other]\nk=1\n");
+        final List<ConfigChangeEvent> configName = record(listener -> ConfigManager.addListener("matcha.k", listener));
+        final List<ConfigChangeEvent> file = record(listener -> ConfigManager.addFileListener("matcha", listener));
+        final List<ConfigChangeEvent> keyPrefix = record(listener -> ConfigManager.addPrefixListener("matcha.k", listener));
+        final List<ConfigChangeEvent> filePrefix = record(listener -> ConfigManager.addPrefixListener("matcha", listener));
+
+        ConfigManager.reloadConfigContent("[matcha]\nk=2\nkk=2\nx=2\n[matchab]\nk=2\n[other]\nk=2\n");
+
+        assertEquals(Collections.singletonList("matcha.k"), names(configName));
+        assertEquals(names(file).toString(), 3, file.size());
+        assertTrue(names(file).containsAll(Arrays.asList("matcha.k", "matcha.kk", "matcha.x")));
+        assertEquals(names(keyPrefix).toString(), 2, keyPrefix.size());
+        assertTrue(names(keyPrefix).containsAll(Arrays.asList("matcha.k", "matcha.kk")));
+        // 前缀短于配置文件名时按配置文件名前缀匹配
+        assertEquals(names(filePrefix).toString(), 4, filePrefix.size());
+        assertTrue(names(filePrefix).contains("matchab.k"));
+        assertFalse(names(filePrefix).contains("other.k"));
+    }
+
+    @Test
+    public void throwingListenerDoesNotAffectOthers() {
+        ConfigManager.reloadConfigContent("[throwa]\nk=1\n");
+        final ConfigChangeListener throwing = events -> {
+            throw new IllegalStateException("listener failure");
+        };
+        listeners.add(throwing);
+        ConfigManager.addFileListener("throwa", throwing);
+        final List<ConfigChangeEvent> received = record(listener -> ConfigManager.addFileListener("throwa", listener));
+
+        ConfigManager.reloadConfigContent("[throwa]\nk=2\n");
+        assertEquals("2", ConfigManager.getConfig("throwa.k"));
+        assertEquals(1, received.size());
+
+        ConfigManager.reloadConfigContent("[throwa]\nk=3\n");
+        assertEquals("3", ConfigManager.getConfig("throwa.k"));
+        assertEquals(2, received.size());
+        assertEquals("3", received.get(1).getNewValue());
+    }
+
+    private List<ConfigChangeEvent> record(Consumer<ConfigChangeListener> register) {
+        final List<ConfigChangeEvent> events = new ArrayList<>();
+        final ConfigChangeListener listener = events::addAll;
+        listeners.add(listener);
+        register.accept(listener);
+        return events;
+    }
+
+    private static List<String> names(List<ConfigChangeEvent> events) {
+        final List<String> names = new ArrayList<>();
+        for (final ConfigChangeEvent event : events) {
+            names.add(event.getConfigName());
+        }
+        return names;
+    }
+
+    private static Map<String, ConfigChangeEvent> byName(List<ConfigChangeEvent> events) {
+        final Map<String, ConfigChangeEvent> byName = new TreeMap<>();
+        for (final ConfigChangeEvent event : events) {
+            byName.put(event.getConfigName(), event);
+        }
+        return byName;
+    }
+}
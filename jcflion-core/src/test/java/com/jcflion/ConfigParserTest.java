@@ -0,0 +1,179 @@
+package com.jcflion;
+
+import com.jcflion.util.CollectionUtil;
+import com.jcflion.util.StringUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 单次扫描的解析器与原先按 split("\n")/splitFirst 逐行解析的结果对照
+ *
+ * @author kanner
+ */
+public class ConfigParserTest {
+
+    private static final List<String> LINES = Arrays.asList(
+            "",
+            "   ",
+            "\t",
+            "# comment",
+            "#k=v",
+            "  # indented=comment",
+            "key=",
+            "key=   ",
+            "=value",
+            "  =value",
+            "k=v",
+            " k = v ",
+            "k=v=w",
+            "k==",
+            "k=v\r",
+            "\tk\t=\tv\t",
+            "k=1",
+            "k=2",
+            "no equals sign",
+            "[app]",
+            "[db]",
+            "[ app ]",
+            "[app]\r",
+            "[app] ",
+            " [app]",
+            "[]",
+            "[ ]",
+            "[a]b]",
+            "[a=b]",
+            "[x",
+            "x]",
+            "名称=值",
+            "emoji=😀 ok",
+            "é=ü",
+            "[缓存]",
+            "键 = 多字节 值 ");
+
+    @Test
+    public void examples() {
+        assertSameAsBaseline("");
+        assertSameAsBaseline("k=v\n");
+        assertSameAsBaseline("before=first\n[app]\nk=v\n");
+        assertSameAsBaseline("[app]\r\nk=v\r\n[db]\r\nurl=jdbc:mysql://db:3306/app?a=b\r\n");
+        assertSameAsBaseline("[app]\n\n# comment\n  # k=v\nkey=\n=value\n k = v \n[ db ]\nk=1\n[app]\nk=2");
+        assertSameAsBaseline("[应用]\n名称=值\nemoji=😀\n[app]\né=ü\n");
+        assertSameAsBaseline("[app]\nk=v\n[]\nlost=1\n[ ]\nlost=2\n[db]\nk=3\n");
+        assertSameAsBaseline("[app]\nk=v\n[db]\r\nk=crlf header is not a header\n");
+    }
+
+    @Test
+    public void randomContents() {
+        final Random random = new Random(20181018L);
+        for (int i = 0; i < 2000; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            final int lines = random.nextInt(30);
+            for (int j = 0; j < lines; ++j) {
+                sb.append(LINES.get(random.nextInt(LINES.size())));
+                if (j + 1 < lines || random.nextBoolean()) {
+                    sb.append(random.nextInt(8) == 0 ? "\r\n" : "\n");
+                }
+            }
+            assertSameAsBaseline(sb.toString());
+        }
+    }
+
+    @Test
+    public void parseFileMatchesSingleSection() {
+        final Random random = new Random(7L);
+        for (int i = 0; i < 500; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            final int lines = random.nextInt(20);
+            for (int j = 0; j < lines; ++j) {
+                final String line = LINES.get(random.nextInt(LINES.size()));
+                if (!line.startsWith("[")) {
+                    sb.append(line).append('\n');
+                }
+            }
+            final String file = sb.toString();
+            final ConfigSnapshot.Builder builder = new ConfigSnapshot.Builder(ConfigSnapshot.EMPTY);
+            ConfigParser.parseFile(utf8(file), "app", builder);
+            assertEquals(file, baseline("[app]\n" + file), toMap(builder.build(1L)));
+        }
+    }
+
+    private static void assertSameAsBaseline(String content) {
+        final Map<String, Map<String, String>> expected = baseline(content);
+        assertEquals(content, expected, parse(utf8(content)));
+        assertEquals(content, expected, parse(direct(content)));
+    }
+
+    private static Map<String, Map<String, String>> parse(ByteBuffer content) {
+        final ConfigSnapshot.Builder builder = new ConfigSnapshot.Builder(ConfigSnapshot.EMPTY);
+        ConfigParser.parse(content, builder);
+        return toMap(builder.build(1L));
+    }
+
+    private static Map<String, Map<String, String>> toMap(ConfigSnapshot snapshot) {
+        final Map<String, Map<String, String>> configs = new HashMap<>();
+        for (final ConfigChangeEvent event : ConfigSnapshot.diff(ConfigSnapshot.EMPTY, snapshot)) {
+            configs.computeIfAbsent(event.getConfigFilename(), k -> new HashMap<>()).put(event.getKey(), event.getNewValue());
+        }
+        return configs;
+    }
+
+    /**
+     * 原先的解析算法：split("\n")分行，首字符判断注释和配置文件名，splitFirst("=")后去除首尾空白
+     */
+    private static Map<String, Map<String, String>> baseline(String configContent) {
+        final Map<String, Map<String, String>> configs = new HashMap<>();
+        if (StringUtil.isEmpty(configContent)) {
+            return configs;
+        }
+        final String[] lines = StringUtil.split(configContent, "\n");
+        if (CollectionUtil.isEmpty(lines)) {
+            return configs;
+        }
+        String configFilename = null;
+        for (final String line : lines) {
+            if (StringUtil.isEmpty(line)) {
+                continue;
+            }
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                configFilename = line.substring(1, line.length() - 1);
+            } else if (line.contains("=")) {
+                if (StringUtil.isEmpty(configFilename)) {
+                    continue;
+                }
+                final String[] arr = StringUtil.splitFirst(line, "=");
+                if (null == arr || 2 != arr.length || StringUtil.isEmpty(arr[0]) || StringUtil.isEmpty(arr[1])) {
+                    continue;
+                }
+                configs.computeIfAbsent(configFilename.trim(), k -> new HashMap<>()).put(arr[0].trim(), arr[1].trim());
+            }
+        }
+        return configs;
+    }
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 不能直接访问底层数组的buffer，覆盖逐字节解码的路径，position不为0且前面是一个配置文件名行
+     */
+    private static ByteBuffer direct(String s) {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+        buffer.put(new byte[]{'[', 'x', ']'}).put(bytes).flip();
+        buffer.position(3);
+        return buffer;
+    }
+}
@@ -0,0 +1,256 @@
+package com.jcflion;
+
+import com.jcflion.util.HashUtil;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 整体指纹和配置文件指纹跳过加载、多配置源和快照发布的测试
+ *
+ * @author kanner
+ */
+public class ConfigReloadTest {
+
+    private final List<ConfigChangeEvent> events = Collections.synchronizedList(new ArrayList<>());
+
+    private final ConfigChangeListener listener = events::addAll;
+
+    @BeforeClass
+    public static void setUpClass() {
+        ConfigManager.setListenerExecutor(Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        ConfigManager.removeListener(listener);
+    }
+
+    @Test
+    public void identicalPushIsNoop() {
+        final String content = "[same]\nk=1\nname = abc\n[same2]\nx=2\n";
+        ConfigManager.reloadConfigContent(content);
+        final ConfigSnapshot snapshot = ConfigManager.snapshot();
+        assertEquals(ConfigParser.fingerprint(utf8(content)), snapshot.getFingerprint());
+        ConfigManager.addPrefixListener("same", listener);
+
+        ConfigManager.reloadConfigContent(content);
+        ConfigManager.reloadConfigContent(direct(content));
+        // 整体指纹相同，快照保持不变
+        assertSame(snapshot, ConfigManager.snapshot());
+        assertTrue(events.toString(), events.isEmpty());
+    }
+
+    @Test
+    public void commentAndWhitespaceOnlyChangePublishesNothing() {
+        ConfigManager.reloadConfigContent("[blank]\nk=1\nname=abc\n[blank2]\nx=2\n");
+        final ConfigSnapshot snapshot = ConfigManager.snapshot();
+        ConfigManager.addPrefixListener("blank", listener);
+
+        ConfigManager.reloadConfigContent("# header\n[blank]\n\n# comment\n  k = 1  \nname=abc\r\n[blank2]\n\t\nx=2");
+        assertSame(snapshot, ConfigManager.snapshot());
+        assertEquals("abc", ConfigManager.getConfig("blank.name"));
+        assertTrue(events.toString(), events.isEmpty());
+    }
+
+    @Test
+    public void keyMovedBetweenFilesIsPickedUp() {
+        ConfigManager.reloadConfigContent("[movea]\nk=1\nx=2\n[moveb]\ny=3\n");
+        final long version = ConfigManager.snapshot().getVersion();
+        ConfigManager.addPrefixListener("move", listener);
+
+        // 配置项总数和配置值都不变，只是换了配置文件
+        ConfigManager.reloadConfigContent("[movea]\nx=2\n[moveb]\ny=3\nk=1\n");
+        assertEquals(version + 1, ConfigManager.snapshot().getVersion());
+        assertNull(ConfigManager.getConfig("movea.k"));
+        assertEquals("1", ConfigManager.getConfig("moveb.k"));
+        assertEquals(2, events.size());
+        for (final ConfigChangeEvent event : events) {
+            if ("movea".equals(event.getConfigFilename())) {
+                assertTrue(event.toString(), event.isDeleted());
+            } else {
+                assertEquals("moveb.k", event.getConfigName());
+                assertTrue(event.toString(), event.isAdded());
+            }
+        }
+
+        // 按配置文件增量加载时同样生效
+        ConfigManager.reloadConfigFiles(mapOf("movea", utf8("x=2\nk=1"), "moveb", utf8("y=3")));
+        assertEquals("1", ConfigManager.getConfig("movea.k"));
+        assertNull(ConfigManager.getConfig("moveb.k"));
+        assertEquals(version + 2, ConfigManager.snapshot().getVersion());
+    }
+
+    @Test
+    public void fileFingerprintMatchesMergedSection() {
+        for (final String content : new String[]{"[fpa]\nk=1\nj=2\n[fpb]\nz=3\n", "[fpa]\nk=1\nj=2\n[fpb]\nz=3"}) {
+            ConfigManager.reloadConfigContent(content);
+            final ConfigSnapshot snapshot = ConfigManager.snapshot();
+            for (final String file : new String[]{"k=1\nj=2", "k=1\nj=2\n"}) {
+                assertEquals(file, snapshot.getFileFingerprint("fpa"), (Long) ConfigParser.fileFingerprint(utf8(file)));
+                assertEquals(file, snapshot.getFileFingerprint("fpa"), (Long) ConfigParser.fileFingerprint(direct(file)));
+            }
+            for (final String file : new String[]{"z=3", "z=3\n"}) {
+                assertEquals(file, snapshot.getFileFingerprint("fpb"), (Long) ConfigParser.fileFingerprint(utf8(file)));
+            }
+
+            // 单独推送与合并文本中相同的配置文件，不重新解析也不替换快照
+            ConfigManager.reloadConfigFile("fpa", utf8("k=1\nj=2\n"));
+            ConfigManager.reloadConfigFile("fpb", utf8("z=3"));
+            assertSame(snapshot, ConfigManager.snapshot());
+        }
+    }
+
+    @Test
+    public void duplicateSectionChainsFingerprints() {
+        final String content = "[dupa]\nk=1\n[dupb]\ny=2\n[dupa]\nm=3\n";
+        ConfigManager.reloadConfigContent(content);
+        final ConfigSnapshot snapshot = ConfigManager.snapshot();
+        assertEquals("1", ConfigManager.getConfig("dupa.k"));
+        assertEquals("3", ConfigManager.getConfig("dupa.m"));
+        final long first = HashUtil.fingerprint64(utf8("k=1"), 0, 3, 0L);
+        assertEquals((Long) HashUtil.fingerprint64(utf8("m=3"), 0, 3, first), snapshot.getFileFingerprint("dupa"));
+        assertEquals((Long) ConfigParser.fileFingerprint(utf8("y=2\n")), snapshot.getFileFingerprint("dupb"));
+
+        // 交换两个同名段落，指纹不同但配置项相同，不替换快照
+        ConfigManager.reloadConfigContent("[dupa]\nm=3\n[dupb]\ny=2\n[dupa]\nk=1\n");
+        assertSame(snapshot, ConfigManager.snapshot());
+
+        // 只修改第二个同名段落也会重新解析
+        ConfigManager.addFileListener("dupa", listener);
+        ConfigManager.reloadConfigContent("[dupa]\nk=1\n[dupb]\ny=2\n[dupa]\nm=4\n");
+        assertNotEquals(snapshot.getFileFingerprint("dupa"), ConfigManager.snapshot().getFileFingerprint("dupa"));
+        assertEquals("4", ConfigManager.getConfig("dupa.m"));
+        assertEquals(snapshot.getVersion() + 1, ConfigManager.snapshot().getVersion());
+        assertEquals(1, events.size());
+        assertEquals("3", events.get(0).getOldValue());
+        assertEquals("4", events.get(0).getNewValue());
+    }
+
+    @Test
+    public void sourcesOnlyReplaceTheirOwnFiles() {
+        final MemoryConfigSource first = new MemoryConfigSource("[ownera]\nk=1\n[ownerb]\nx=2\n");
+        final MemoryConfigSource second = new MemoryConfigSource();
+        second.putFile("ownerc", "y=3");
+        try (ConfigLoader firstLoader = new ConfigLoader(first); ConfigLoader secondLoader = new ConfigLoader(second)) {
+            firstLoader.start();
+            secondLoader.start();
+            assertEquals("1", ConfigManager.getConfig("ownera.k"));
+            assertEquals("3", ConfigManager.getConfig("ownerc.y"));
+            // 多个配置源时快照不对应任何一份完整的配置文本
+            assertEquals(0L, ConfigManager.snapshot().getFingerprint());
+
+            // 整体替换只删除本配置源不再包含的配置文件
+            first.setContent("[ownera]\nk=10\n");
+            assertEquals("10", ConfigManager.getConfig("ownera.k"));
+            assertNull(ConfigManager.getConfig("ownerb.x"));
+            assertEquals("3", ConfigManager.getConfig("ownerc.y"));
+
+            // 不能删除其他配置源的配置文件
+            second.removeFile("ownera");
+            assertEquals("10", ConfigManager.getConfig("ownera.k"));
+            second.putFile("ownerd", "z=4");
+            first.setContent("[ownerb]\nx=20\n");
+            assertNull(ConfigManager.getConfig("ownera.k"));
+            assertEquals("20", ConfigManager.getConfig("ownerb.x"));
+            assertEquals("3", ConfigManager.getConfig("ownerc.y"));
+            assertEquals("4", ConfigManager.getConfig("ownerd.z"));
+
+            second.removeFile("ownerc");
+            assertNull(ConfigManager.getConfig("ownerc.y"));
+            assertEquals("20", ConfigManager.getConfig("ownerb.x"));
+        }
+    }
+
+    @Test
+    public void readersSeeWholeSnapshotsInPublishOrder() throws Exception {
+        final int keys = 64;
+        final int publishes = 200;
+        ConfigManager.reloadConfigContent(generation(0, keys));
+        final long version = ConfigManager.snapshot().getVersion();
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; ++r) {
+            readers[r] = new Thread(() -> {
+                long lastVersion = 0L;
+                int lastGeneration = -1;
+                while (!done.get() && null == failure.get()) {
+                    final int minGeneration = published.get();
+                    final ConfigSnapshot snapshot = ConfigManager.snapshot();
+                    final int generation = Integer.parseInt(snapshot.getConfig("pubgen.gen"));
+                    for (int i = 0; i < keys; ++i) {
+                        // 同一快照中的配置项只能来自同一次发布
+                        if (!String.valueOf(generation).equals(snapshot.getConfig("pub.k" + i))) {
+                            failure.compareAndSet(null, "mixed snapshot, gen=" + generation + ", k" + i + "=" + snapshot.getConfig("pub.k" + i));
+                        }
+                    }
+                    // 发布完成后不会再读到旧快照，版本号和配置同步前进
+                    if (generation < minGeneration || snapshot.getVersion() < lastVersion || generation < lastGeneration
+                            || (snapshot.getVersion() == lastVersion && generation != lastGeneration)) {
+                        failure.compareAndSet(null, "stale snapshot, gen=" + generation + ", published=" + minGeneration
+                                + ", version=" + snapshot.getVersion() + ", last version=" + lastVersion);
+                    }
+                    lastVersion = snapshot.getVersion();
+                    lastGeneration = generation;
+                }
+            });
+            readers[r].start();
+        }
+        for (int g = 1; g <= publishes; ++g) {
+            ConfigManager.reloadConfigContent(generation(g, keys));
+            published.set(g);
+        }
+        done.set(true);
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get(), failure.get());
+        // 每次发布版本号加一
+        assertEquals(version + publishes, ConfigManager.snapshot().getVersion());
+    }
+
+    private static String generation(int generation, int keys) {
+        final StringBuilder sb = new StringBuilder("[pub]\n");
+        for (int i = 0; i < keys; ++i) {
+            sb.append('k').append(i).append('=').append(generation).append('\n');
+        }
+        return sb.append("[pubgen]\ngen=").append(generation).append('\n').toString();
+    }
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer direct(String s) {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private static Map<String, ByteBuffer> mapOf(String k1, ByteBuffer v1, String k2, ByteBuffer v2) {
+        final Map<String, ByteBuffer> files = new HashMap<>();
+        files.put(k1, v1);
+        files.put(k2, v2);
+        return files;
+    }
+}
@@ -0,0 +1,226 @@
+package com.jcflion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 配置表与 HashMap 的对照测试，覆盖Latin-1和UTF-16两种配置名存储、构建中途转为UTF-16、跨表复制、重复键和扩容
+ *
+ * @author kanner
+ */
+public class ConfigTableTest {
+
+    private static final String[] FILES = {"app", "db", "cache", "缓存"};
+
+    @Test
+    public void matchesHashMapWhileInflatingMidBuild() {
+        final Random random = new Random(42);
+        final ConfigTable.Builder builder = new ConfigTable.Builder(0);
+        final Map<List<String>, ConfigValue> reference = new LinkedHashMap<>();
+        // 先写入Latin-1配置名(含0x80~0xFF的字符)，扩容多次
+        for (int i = 0; i < 300; ++i) {
+            put(builder, reference, FILES[random.nextInt(3)], latin1Key(random, i), "v" + i);
+        }
+        verify(builder.build(), reference);
+
+        final ConfigTable.Builder mixed = new ConfigTable.Builder(4);
+        reference.clear();
+        for (int i = 0; i < 200; ++i) {
+            put(mixed, reference, FILES[random.nextInt(FILES.length)], latin1Key(random, i), "a" + i);
+        }
+        // 构建中途出现非Latin-1配置名，已写入的配置名转为UTF-16
+        put(mixed, reference, "app", "名称", "name");
+        put(mixed, reference, "app", "emoji.😀", "smile");
+        for (int i = 0; i < 200; ++i) {
+            put(mixed, reference, FILES[random.nextInt(FILES.length)], i % 2 == 0 ? latin1Key(random, i) : "键" + i, "b" + i);
+        }
+        // 重复写入保留最后一次的值和第一次的位置
+        for (final List<String> key : new ArrayList<>(reference.keySet())) {
+            if (random.nextInt(4) == 0) {
+                put(mixed, reference, key.get(0), key.get(1), "dup-" + key.get(1));
+            }
+        }
+        verify(mixed.build(), reference);
+    }
+
+    @Test
+    public void putFromCopiesAcrossCoders() {
+        final Map<List<String>, ConfigValue> latin1Reference = new LinkedHashMap<>();
+        final ConfigTable.Builder latin1Builder = new ConfigTable.Builder(0);
+        for (int i = 0; i < 100; ++i) {
+            put(latin1Builder, latin1Reference, FILES[i % 3], "kéy" + i, "l" + i);
+        }
+        final ConfigTable latin1 = latin1Builder.build();
+
+        final Map<List<String>, ConfigValue> utf16Reference = new LinkedHashMap<>();
+        final ConfigTable.Builder utf16Builder = new ConfigTable.Builder(0);
+        for (int i = 0; i < 100; ++i) {
+            put(utf16Builder, utf16Reference, FILES[i % 4], i % 3 == 0 ? "键" + i : "kéy" + i, "u" + i);
+        }
+        final ConfigTable utf16 = utf16Builder.build();
+
+        // Latin-1构建器先复制Latin-1条目，再复制UTF-16条目时转为UTF-16；重叠的键被覆盖
+        final ConfigTable.Builder copy = new ConfigTable.Builder(0);
+        final Map<List<String>, ConfigValue> copyReference = new LinkedHashMap<>();
+        for (int entry = 0; entry < latin1.size(); ++entry) {
+            copy.putFrom(latin1, entry);
+        }
+        copyReference.putAll(latin1Reference);
+        for (int entry = 0; entry < utf16.size(); ++entry) {
+            copy.putFrom(utf16, entry);
+        }
+        copyReference.putAll(utf16Reference);
+        final ConfigTable merged = copy.build();
+        verify(merged, copyReference);
+
+        // UTF-16构建器复制Latin-1条目
+        final ConfigTable.Builder back = new ConfigTable.Builder(0);
+        final Map<List<String>, ConfigValue> backReference = new LinkedHashMap<>();
+        put(back, backReference, "app", "名称", "name");
+        for (int entry = 0; entry < latin1.size(); ++entry) {
+            back.putFrom(latin1, entry);
+        }
+        backReference.putAll(latin1Reference);
+        verify(back.build(), backReference);
+
+        // 跨编码按条目查询
+        for (int entry = 0; entry < utf16.size(); ++entry) {
+            final List<String> key = key(utf16.filenameAt(entry), utf16.keyAt(entry));
+            assertSame(latin1Reference.get(key), latin1.get(utf16, entry));
+            assertSame(copyReference.get(key), merged.get(utf16, entry));
+        }
+        for (int entry = 0; entry < latin1.size(); ++entry) {
+            final List<String> key = key(latin1.filenameAt(entry), latin1.keyAt(entry));
+            assertSame(utf16Reference.get(key), utf16.get(latin1, entry));
+        }
+    }
+
+    @Test
+    public void diffMatchesHashMap() {
+        final Random random = new Random(7);
+        final Map<List<String>, String> oldReference = new HashMap<>();
+        final ConfigSnapshot.Builder oldBuilder = new ConfigSnapshot.Builder(ConfigSnapshot.EMPTY);
+        for (int i = 0; i < 500; ++i) {
+            final String file = FILES[random.nextInt(3)];
+            final String key = latin1Key(random, i);
+            oldBuilder.put(file, key, "v" + i);
+            oldReference.put(key(file, key), "v" + i);
+        }
+        final ConfigSnapshot oldSnapshot = oldBuilder.build(1L);
+
+        // 新快照先写入非Latin-1配置名，再从旧快照复制未变化的配置文件
+        final Map<List<String>, String> newReference = new HashMap<>();
+        final ConfigSnapshot.Builder newBuilder = new ConfigSnapshot.Builder(oldSnapshot);
+        for (int i = 0; i < 50; ++i) {
+            newBuilder.put("缓存", "键" + i, "n" + i);
+            newReference.put(key("缓存", "键" + i), "n" + i);
+        }
+        newBuilder.retainExcept(Collections.singleton("db"));
+        for (final Map.Entry<List<String>, String> entry : oldReference.entrySet()) {
+            if (!"db".equals(entry.getKey().get(0))) {
+                newReference.put(entry.getKey(), entry.getValue());
+            } else if (random.nextBoolean()) {
+                final String value = random.nextBoolean() ? entry.getValue() : entry.getValue() + "-changed";
+                newBuilder.put("db", entry.getKey().get(1), value);
+                newReference.put(entry.getKey(), value);
+            }
+        }
+        final ConfigSnapshot newSnapshot = newBuilder.build(2L);
+
+        assertEquals(expectedDiff(oldReference, newReference), actualDiff(ConfigSnapshot.diff(oldSnapshot, newSnapshot)));
+        assertEquals(expectedDiff(newReference, oldReference), actualDiff(ConfigSnapshot.diff(newSnapshot, oldSnapshot)));
+        assertEquals(Collections.emptySet(), actualDiff(ConfigSnapshot.diff(newSnapshot, newSnapshot)));
+    }
+
+    private static void put(ConfigTable.Builder builder, Map<List<String>, ConfigValue> reference,
+                            String file, String key, String raw) {
+        final ConfigValue value = ConfigValue.parse(file, key, raw);
+        builder.put(file, key, value);
+        reference.put(key(file, key), value);
+        assertEquals(reference.size(), builder.size());
+    }
+
+    private static void verify(ConfigTable table, Map<List<String>, ConfigValue> reference) {
+        assertEquals(reference.size(), table.size());
+        int entry = 0;
+        for (final Map.Entry<List<String>, ConfigValue> expected : reference.entrySet()) {
+            final String file = expected.getKey().get(0);
+            final String key = expected.getKey().get(1);
+            assertEquals(file, table.filenameAt(entry));
+            assertEquals(key, table.keyAt(entry));
+            assertSame(expected.getValue(), table.valueAt(entry));
+            assertSame(expected.getValue(), table.get(file, key));
+            assertSame(expected.getValue(), table.get(file + "." + key));
+            assertSame(expected.getValue(), table.get(table, entry));
+            ++entry;
+            // 只差一个字符或换了配置文件时查不到
+            if (!reference.containsKey(key(file, key + "x"))) {
+                assertNull(table.get(file, key + "x"));
+                assertNull(table.get(file + "." + key + "x"));
+            }
+            if (!reference.containsKey(key(file, key.substring(1)))) {
+                assertNull(table.get(file, key.substring(1)));
+            }
+            if (!reference.containsKey(key("other", key))) {
+                assertNull(table.get("other", key));
+            }
+        }
+    }
+
+    private static Set<String> expectedDiff(Map<List<String>, String> oldReference, Map<List<String>, String> newReference) {
+        final Set<String> changes = new HashSet<>();
+        for (final Map.Entry<List<String>, String> entry : newReference.entrySet()) {
+            final String oldValue = oldReference.get(entry.getKey());
+            if (!entry.getValue().equals(oldValue)) {
+                changes.add(entry.getKey() + ":" + oldValue + "->" + entry.getValue());
+            }
+        }
+        for (final Map.Entry<List<String>, String> entry : oldReference.entrySet()) {
+            if (!newReference.containsKey(entry.getKey())) {
+                changes.add(entry.getKey() + ":" + entry.getValue() + "->null");
+            }
+        }
+        return changes;
+    }
+
+    private static Set<String> actualDiff(List<ConfigChangeEvent> events) {
+        final Set<String> changes = new HashSet<>();
+        for (final ConfigChangeEvent event : events) {
+            changes.add(key(event.getConfigFilename(), event.getKey()) + ":" + event.getOldValue() + "->" + event.getNewValue());
+        }
+        assertEquals(events.size(), changes.size());
+        return changes;
+    }
+
+    /**
+     * 随机的Latin-1配置名，字符集和长度都很小以制造重复键，部分配置名较长以触发配置名数组扩容
+     */
+    private static String latin1Key(Random random, int i) {
+        final StringBuilder sb = new StringBuilder(i % 5 == 0 ? "feature.module.option." : "k");
+        final int length = random.nextInt(4);
+        for (int j = 0; j < length; ++j) {
+            sb.append("aéÿ".charAt(random.nextInt(3)));
+        }
+        return sb.append('.').append(random.nextInt(7)).toString();
+    }
+
+    private static List<String> key(String file, String key) {
+        final List<String> list = new ArrayList<>(2);
+        list.add(file);
+        list.add(key);
+        return list;
+    }
+}
@@ -0,0 +1,165 @@
+package com.jcflion.gray;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按比例放量(pct:)的边界、盐值和分布以及序列化测试
+ *
+ * @author kanner
+ */
+public class GrayConfigTest {
+
+    private static final int IDS = 100000;
+
+    @Test
+    public void parseBasisPoints() {
+        assertEquals(0, rule("allow;pct:0").getRolloutBasisPoints());
+        assertEquals(GrayConfig.BASIS_POINTS_FULL, rule("allow;pct:100").getRolloutBasisPoints());
+        assertEquals(325, rule("allow;pct:3.25").getRolloutBasisPoints());
+        assertEquals(1, rule("allow;pct:0.01").getRolloutBasisPoints());
+        // 超出范围或超过两位小数的比例被忽略
+        for (final String illegal : new String[]{"pct:100.01", "pct:-1", "pct:0.001", "pct:abc", "pct:"}) {
+            assertEquals(illegal, -1, rule("allow;" + illegal).getRolloutBasisPoints());
+        }
+    }
+
+    @Test
+    public void zeroPercentHitsNothing() {
+        final GrayConfig gray = rule("allow;pct:0");
+        assertEquals(0, hits(gray));
+        for (int id = 0; id < 1000; ++id) {
+            assertFalse(gray.hit(String.valueOf(id)));
+        }
+    }
+
+    @Test
+    public void fullPercentHitsEverything() {
+        final GrayConfig gray = rule("allow;pct:100");
+        assertEquals(IDS, hits(gray));
+        assertTrue(gray.hit(Long.MIN_VALUE));
+        assertTrue(gray.hit(Long.MAX_VALUE));
+        for (int id = 0; id < 1000; ++id) {
+            assertTrue(gray.hit(String.valueOf(id)));
+        }
+    }
+
+    @Test
+    public void distributionFollowsPercent() {
+        // 期望值的标准差约为 sqrt(n * p * (1 - p))，不超过160，误差放宽到800
+        for (final int percent : new int[]{1, 10, 50, 90}) {
+            final int hits = hits(rule("allow;pct:" + percent));
+            assertEquals("pct:" + percent + ", hits=" + hits, IDS * percent / 100.0, hits, 800);
+        }
+        int stringHits = 0;
+        final GrayConfig gray = rule("allow;pct:25");
+        for (int id = 0; id < IDS; ++id) {
+            if (gray.hit("user" + id)) {
+                ++stringHits;
+            }
+        }
+        assertEquals("hits=" + stringHits, IDS * 0.25, stringHits, 800);
+    }
+
+    @Test
+    public void raisingPercentKeepsHitIds() {
+        final GrayConfig lower = rule("allow;pct:10:ramp");
+        final GrayConfig higher = rule("allow;pct:30:ramp");
+        for (long id = 0; id < IDS; ++id) {
+            if (lower.hit(id)) {
+                assertTrue(String.valueOf(id), higher.hit(id));
+            }
+        }
+    }
+
+    @Test
+    public void saltChangesSelection() {
+        final GrayConfig first = rule("allow;pct:10:salt1");
+        final GrayConfig second = rule("allow;pct:10:salt2");
+        assertEquals("salt1", first.getRolloutSalt());
+        int both = 0;
+        for (long id = 0; id < IDS; ++id) {
+            if (first.hit(id) && second.hit(id)) {
+                ++both;
+            }
+        }
+        // 盐值不同时两次选中相互独立，重叠约为 10% * 10%
+        assertEquals("both=" + both, IDS * 0.01, both, 300);
+
+        // 未指定盐值时使用配置名
+        final GrayConfig unsalted = rule("allow;pct:10");
+        final GrayConfig named = rule("allow;pct:10:graytest.rule");
+        assertEquals("graytest.rule", unsalted.getRolloutSalt());
+        for (long id = 0; id < IDS; ++id) {
+            assertEquals(String.valueOf(id), unsalted.hit(id), named.hit(id));
+        }
+    }
+
+    @Test
+    public void batchMatchesSingle() {
+        final GrayConfig gray = rule("allow;pct:37.5;%7");
+        final long[] ids = new long[1000];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = i * 7919L - 3000L;
+        }
+        final boolean[] hits = new boolean[ids.length];
+        gray.hitBatch(ids, 0, ids.length, hits);
+        for (int i = 0; i < ids.length; ++i) {
+            assertEquals(String.valueOf(ids[i]), gray.hit(ids[i]), hits[i]);
+        }
+    }
+
+    @Test
+    public void serializationKeepsDecisions() throws Exception {
+        final StringBuilder value = new StringBuilder("allow;pct:5;%7;42;-3");
+        for (int i = 0; i < GrayNameSet.COMPACT_THRESHOLD; ++i) {
+            value.append(";user").append(i);
+        }
+        final GrayConfig gray = rule(value.toString());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(gray);
+        }
+        final GrayConfig copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (GrayConfig) in.readObject();
+        }
+        assertEquals(gray, copy);
+        for (long id = -10; id < IDS; ++id) {
+            assertEquals(String.valueOf(id), gray.hit(id), copy.hit(id));
+        }
+        for (int i = 0; i < GrayNameSet.COMPACT_THRESHOLD + 10; ++i) {
+            assertEquals(gray.hit("user" + i), copy.hit("user" + i));
+        }
+        assertTrue(copy.hit("user0"));
+    }
+
+    private static GrayConfig rule(String value) {
+        return GrayConfig.parse("graytest", "rule", value);
+    }
+
+    private static int hits(GrayConfig gray) {
+        final long[] ids = new long[IDS];
+        for (int i = 0; i < IDS; ++i) {
+            ids[i] = i;
+        }
+        final boolean[] hits = new boolean[IDS];
+        gray.hitBatch(ids, 0, IDS, hits);
+        int count = 0;
+        for (int i = 0; i < IDS; ++i) {
+            assertEquals(String.valueOf(i), gray.hit((long) i), hits[i]);
+            if (hits[i]) {
+                ++count;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package com.jcflion.metrics;
+
+import com.jcflion.ConfigManager;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kanner
+ */
+public class ConfigMetricsTest {
+
+    @Test
+    public void missingRuleIsCountedWithoutCreatingRuleMetrics() throws Exception {
+        final RecordingRegistry registry = new RecordingRegistry();
+        ConfigMetrics.bindTo(registry);
+        final LongSupplier missing = registry.counter("cflion.gray.decisions.all", "missing");
+        final long before = missing.getAsLong();
+
+        ConfigMetrics.recordGrayRuleMissing("metricstest.typo");
+        ConfigMetrics.recordGrayRuleMissing(null);
+
+        assertEquals(before + 2, missing.getAsLong());
+        assertEquals(before + 2, ConfigMetrics.getInstance().getGrayRuleMissing());
+        for (final Map<String, String> tags : registry.tags) {
+            assertFalse(tags.toString(), String.valueOf(tags.get("rule")).startsWith("metricstest."));
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(
+                "com.jcflion:type=GrayRuleMetrics,name=" + ObjectName.quote("metricstest.typo"))));
+    }
+
+    @Test
+    public void missingRuleIsCountedOnCompiledRule() {
+        final RecordingRegistry registry = new RecordingRegistry();
+        ConfigMetrics.bindTo(registry);
+        final GrayRuleMetrics metrics = ConfigMetrics.grayRule("metricsrule.switch");
+        assertNotNull(metrics);
+        assertEquals(metrics, ConfigMetrics.grayRule("metricsrule.switch"));
+        assertTrue(registry.tags.toString(), registry.tags.contains(tags("rule", "metricsrule.switch", "result", "missing")));
+
+        ConfigMetrics.recordGrayRuleMissing("metricsrule.switch");
+        assertEquals(1L, metrics.getRuleMissing());
+    }
+
+    @Test
+    public void globalDecisionsAreRegistered() {
+        final RecordingRegistry registry = new RecordingRegistry();
+        ConfigMetrics.bindTo(registry);
+        final LongSupplier allowed = registry.counter("cflion.gray.decisions.all", "allowed");
+        final LongSupplier denied = registry.counter("cflion.gray.decisions.all", "denied");
+        final long allowedBefore = allowed.getAsLong();
+        final long deniedBefore = denied.getAsLong();
+
+        // 超出数量上限的规则没有单独的计数器
+        ConfigMetrics.recordGrayDecision(null, true);
+        ConfigMetrics.recordGrayDecisions(null, 2, 5);
+
+        assertEquals(allowedBefore + 3, allowed.getAsLong());
+        assertEquals(deniedBefore + 5, denied.getAsLong());
+    }
+
+    @Test
+    public void onlyChangedGrayRulesAreCompiled() {
+        ConfigManager.reloadConfigContent("[metricsgray]\nrule1=allow;a;b\nrule2=deny;%10\n[metricsplain]\nk=1\n");
+        final long compiled = ConfigMetrics.getInstance().getGrayRulesCompiled();
+
+        // 灰度规则所在的配置文件未变化，不重新编译
+        ConfigManager.reloadConfigContent("[metricsgray]\nrule1=allow;a;b\nrule2=deny;%10\n[metricsplain]\nk=2\n");
+        assertEquals(compiled, ConfigMetrics.getInstance().getGrayRulesCompiled());
+
+        // 只重新编译配置值变化的灰度规则
+        ConfigManager.reloadConfigContent("[metricsgray]\nrule1=allow;a;c\nrule2=deny;%10\n[metricsplain]\nk=2\n");
+        assertEquals(compiled + 1, ConfigMetrics.getInstance().getGrayRulesCompiled());
+    }
+
+    private static Map<String, String> tags(String... keyValues) {
+        final Map<String, String> tags = new HashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            tags.put(keyValues[i], keyValues[i + 1]);
+        }
+        return tags;
+    }
+
+    private static final class RecordingRegistry implements MetricsRegistry {
+
+        private final List<String> names = new ArrayList<>();
+
+        private final List<Map<String, String>> tags = new ArrayList<>();
+
+        private final List<LongSupplier> counters = new ArrayList<>();
+
+        @Override
+        public void registerCounter(String name, Map<String, String> tags, LongSupplier counter) {
+            this.names.add(name);
+            this.tags.add(tags);
+            this.counters.add(counter);
+        }
+
+        LongSupplier counter(String name, String result) {
+            for (int i = 0; i < names.size(); ++i) {
+                if (name.equals(names.get(i)) && tags.get(i).equals(tags("result", result))) {
+                    return counters.get(i);
+                }
+            }
+            throw new AssertionError("counter not registered: " + name + ", result=" + result);
+        }
+    }
+}
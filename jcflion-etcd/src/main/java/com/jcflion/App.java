@@ -2,13 +2,19 @@ package com.jcflion;
 
 import com.jcflion.gray.GrayConfigManager;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author kanner
  */
 public class App {
 
     public static void main(String[] args) throws InterruptedException {
-        new InitConfig("app1", "http://127.0.0.1:8080").init();
+        final InitConfig initConfig = new InitConfig("app1", "http://127.0.0.1:8080");
+        initConfig.initAsync();
+        if (!initConfig.awaitReady(10L, TimeUnit.SECONDS)) {
+            System.out.println("config is not ready in 10s, serve with defaults");
+        }
         while (true) {
             Thread.sleep(5000L);
             System.out.println("cnf1.key1=" + ConfigManager.getConfig("cnf1.key1"));
@@ -0,0 +1,87 @@
+package com.jcflion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * 监听线程与配置加载之间的单槽邮箱，只保留最新的配置值。
+ * 监听线程投递后立即返回，不等待解析；加载阶段在单独的线程中依次取出最新值加载，
+ * 加载期间到达的多次修改只会加载最后一次
+ *
+ * @param <T> 配置值类型
+ * @author kanner
+ */
+final class ApplyMailbox<T> implements Consumer<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApplyMailbox.class);
+
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    /**
+     * 是否已有加载任务在执行或等待执行，保证任意线程池下同一时刻最多一个加载任务，加载顺序与投递顺序一致
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Executor executor;
+
+    private final ToLongFunction<T> revisionOf;
+
+    private final Consumer<T> handler;
+
+    /**
+     * @param executor 执行加载的线程池
+     * @param revisionOf 取配置值的etcd revision，用于日志
+     * @param handler 加载配置值
+     */
+    ApplyMailbox(Executor executor, ToLongFunction<T> revisionOf, Consumer<T> handler) {
+        this.executor = executor;
+        this.revisionOf = revisionOf;
+        this.handler = handler;
+    }
+
+    /**
+     * 投递新的配置值，覆盖尚未加载的旧值
+     *
+     * @param value 配置值
+     */
+    @Override
+    public void accept(T value) {
+        final T previous = pending.getAndSet(value);
+        if (null != previous && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("coalesce config, skip revision={}, latest revision={}", revisionOf.applyAsLong(previous), revisionOf.applyAsLong(value));
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                LOGGER.error("apply executor rejected config [revision={}]", revisionOf.applyAsLong(value), e);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            final T value = pending.getAndSet(null);
+            if (null != value) {
+                try {
+                    handler.accept(value);
+                } catch (RuntimeException e) {
+                    LOGGER.error("apply config error [revision={}]", revisionOf.applyAsLong(value), e);
+                }
+                continue;
+            }
+            scheduled.set(false);
+            // 释放后若又有新值且没有被其他任务抢先接手，继续由本任务加载
+            if (null == pending.get() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.jcflion;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带随机抖动的指数退避：第n次重试的等待上限为 min(max, initial * 2^n)，
+ * 实际等待时间在上限的一半到上限之间随机，避免大量实例在etcd故障恢复时同时重连
+ *
+ * @author kanner
+ */
+final class Backoff {
+
+    private final long initialMillis;
+
+    private final long maxMillis;
+
+    private int attempts;
+
+    Backoff(long initialMillis, long maxMillis) {
+        if (initialMillis <= 0 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("illegal backoff, initialMillis=" + initialMillis + ", maxMillis=" + maxMillis);
+        }
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return 下一次重试前需要等待的毫秒数
+     */
+    long nextDelayMillis() {
+        long ceiling = initialMillis;
+        for (int i = 0; i < attempts && ceiling < maxMillis; ++i) {
+            ceiling <<= 1;
+        }
+        ceiling = Math.min(ceiling, maxMillis);
+        ++attempts;
+        final long half = ceiling >>> 1;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    /**
+     * 连接恢复后重置
+     */
+    void reset() {
+        attempts = 0;
+    }
+}
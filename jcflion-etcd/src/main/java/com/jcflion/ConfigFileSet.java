@@ -0,0 +1,308 @@
+package com.jcflion;
+
+import com.coreos.jetcd.data.ByteSequence;
+import com.coreos.jetcd.data.KeyValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 按配置文件拆分存放在etcd上的应用配置：应用前缀下每个key对应一个配置文件，
+ * key去掉前缀后为配置文件名，value为该配置文件的文本，不含"[配置文件名]"行。
+ * 监听线程记录每个配置文件的最新内容和发生变化的配置文件，加载阶段取出自上次加载以来的全部变化，一次只重建变化的配置文件。
+ * 只有整体替换时才合并整个应用的配置文本，本地快照由 snapshot() 在加载线程之外合并
+ *
+ * @author kanner
+ */
+final class ConfigFileSet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigFileSet.class);
+
+    private final String prefix;
+    /**
+     * 配置文件名 -> 配置文件文本，按配置文件名排序，生成的本地快照文本稳定
+     */
+    private final Map<String, ByteSequence> files = new TreeMap<>();
+    /**
+     * 自上次加载以来发生变化的配置文件名
+     */
+    private final Set<String> changed = new HashSet<>();
+    /**
+     * 自上次加载以来是否重新拉取过全量配置，此时需要整体替换，删除本地快照中已不存在的配置文件
+     */
+    private boolean replaced;
+
+    private long revision;
+
+    /**
+     * @param prefix 应用前缀，以"/"结尾
+     */
+    ConfigFileSet(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * 以拉取到的全量配置替换全部配置文件
+     *
+     * @param keyValues 应用前缀下的全部key
+     * @param revision 拉取时etcd的revision
+     */
+    synchronized void replaceAll(List<KeyValue> keyValues, long revision) {
+        files.clear();
+        for (final KeyValue keyValue : keyValues) {
+            final String configFilename = configFilename(keyValue);
+            if (null != configFilename && null != keyValue.getValue()) {
+                files.put(configFilename, keyValue.getValue());
+            }
+        }
+        changed.clear();
+        replaced = true;
+        this.revision = Math.max(this.revision, revision);
+    }
+
+    /**
+     * @param keyValue 修改后的配置文件
+     * @return 是否为有效的配置文件
+     */
+    synchronized boolean put(KeyValue keyValue) {
+        final String configFilename = configFilename(keyValue);
+        if (null == configFilename || null == keyValue.getValue()) {
+            return false;
+        }
+        files.put(configFilename, keyValue.getValue());
+        changed.add(configFilename);
+        revision = Math.max(revision, keyValue.getModRevision());
+        return true;
+    }
+
+    /**
+     * @param keyValue 被删除的配置文件
+     * @return 是否为有效的配置文件
+     */
+    synchronized boolean remove(KeyValue keyValue) {
+        final String configFilename = configFilename(keyValue);
+        if (null == configFilename) {
+            return false;
+        }
+        files.remove(configFilename);
+        changed.add(configFilename);
+        revision = Math.max(revision, keyValue.getModRevision());
+        return true;
+    }
+
+    /**
+     * 判断刚拉取到的全量配置是否与本地快照一致：配置文件名相同，且没有在本地快照的revision之后修改的配置文件。
+     * 一致时丢弃待加载的变化，不再整体替换和重写本地快照
+     *
+     * @param keyValues 应用前缀下的全部key
+     * @param localRevision 本地快照的revision，没有时为0
+     * @param localFilenames 本地快照中的配置文件名，没有时为null
+     * @return 是否一致
+     */
+    synchronized boolean isUpToDate(List<KeyValue> keyValues, long localRevision, Set<String> localFilenames) {
+        if (0L == localRevision || null == localFilenames || !files.keySet().equals(localFilenames)) {
+            return false;
+        }
+        for (final KeyValue keyValue : keyValues) {
+            if (keyValue.getModRevision() > localRevision) {
+                return false;
+            }
+        }
+        changed.clear();
+        replaced = false;
+        return true;
+    }
+
+    synchronized long getRevision() {
+        return revision;
+    }
+
+    /**
+     * 取出自上次调用以来的全部变化
+     *
+     * @return 变化，没有变化时返回null
+     */
+    synchronized Changes drainChanges() {
+        if (!replaced && changed.isEmpty()) {
+            return null;
+        }
+        final Map<String, ByteBuffer> changedFiles;
+        if (replaced) {
+            changedFiles = Collections.emptyMap();
+        } else {
+            changedFiles = new HashMap<>(changed.size() * 2);
+            for (final String configFilename : changed) {
+                final ByteSequence content = files.get(configFilename);
+                changedFiles.put(configFilename, null == content ? null : content.getByteString().asReadOnlyByteBuffer());
+            }
+        }
+        final Changes changes = new Changes(replaced, changedFiles, replaced ? toContent() : null, revision);
+        changed.clear();
+        replaced = false;
+        return changes;
+    }
+
+    /**
+     * 合并当前全部配置文件，用于写入本地快照。
+     * 包含调用时已收到但可能尚未加载的变化，与revision对应的是etcd上同一时刻的配置
+     *
+     * @return 本地快照内容
+     */
+    synchronized Snapshot snapshot() {
+        return new Snapshot(revision, toContent());
+    }
+
+    /**
+     * 合并为整个应用的配置文本，用于整体替换和本地快照。
+     * 配置文件中的"[...]"行在按配置文件解析时会被忽略，合并时同样去掉，两种加载方式的结果一致
+     */
+    private ByteBuffer toContent() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final Map.Entry<String, ByteSequence> file : files.entrySet()) {
+            out.write('[');
+            final byte[] name = file.getKey().getBytes(StandardCharsets.UTF_8);
+            out.write(name, 0, name.length);
+            out.write(']');
+            out.write('\n');
+            final byte[] content = file.getValue().getBytes();
+            int lineStart = 0;
+            while (lineStart < content.length) {
+                int lineEnd = lineStart;
+                while (lineEnd < content.length && content[lineEnd] != '\n') {
+                    ++lineEnd;
+                }
+                if (content[lineStart] != '[' || content[lineEnd - 1] != ']') {
+                    out.write(content, lineStart, lineEnd - lineStart);
+                    out.write('\n');
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+        return ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * 本地快照文本中的配置文件名。本地快照由 toContent() 生成，配置文件中的"[...]"行已去掉，剩下的都是配置文件名行
+     *
+     * @param content 本地快照的配置文本，不会修改其position
+     * @return 配置文件名
+     */
+    static Set<String> configFilenames(ByteBuffer content) {
+        final byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        final Set<String> configFilenames = new HashSet<>();
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                ++lineEnd;
+            }
+            if (lineEnd - lineStart >= 2 && bytes[lineStart] == '[' && bytes[lineEnd - 1] == ']') {
+                configFilenames.add(new String(bytes, lineStart + 1, lineEnd - lineStart - 2, StandardCharsets.UTF_8));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return configFilenames;
+    }
+
+    /**
+     * @return 配置文件名，不在应用前缀下或名称不合法时返回null
+     */
+    private String configFilename(KeyValue keyValue) {
+        if (null == keyValue.getKey()) {
+            return null;
+        }
+        final String key = keyValue.getKey().toStringUtf8();
+        if (!key.startsWith(prefix)) {
+            return null;
+        }
+        final String configFilename = key.substring(prefix.length()).trim();
+        if (configFilename.isEmpty() || configFilename.indexOf('\n') >= 0 || configFilename.indexOf(']') >= 0) {
+            LOGGER.warn("ignore illegal config file key, key={}", key);
+            return null;
+        }
+        return configFilename;
+    }
+
+    /**
+     * 自上次加载以来的变化
+     */
+    static final class Changes {
+
+        private final boolean replaced;
+
+        private final Map<String, ByteBuffer> files;
+
+        private final ByteBuffer content;
+
+        private final long revision;
+
+        Changes(boolean replaced, Map<String, ByteBuffer> files, ByteBuffer content, long revision) {
+            this.replaced = replaced;
+            this.files = files;
+            this.content = content;
+            this.revision = revision;
+        }
+
+        /**
+         * @return 是否需要以 getContent() 整体替换
+         */
+        boolean isReplaced() {
+            return replaced;
+        }
+
+        /**
+         * @return 变化的配置文件名 -> 配置文件文本，文本为null表示已删除；整体替换时为空
+         */
+        Map<String, ByteBuffer> getFiles() {
+            return files;
+        }
+
+        /**
+         * @return 合并后的整个应用的配置文本，每次返回独立的position；只在整体替换时有值，否则为null
+         */
+        ByteBuffer getContent() {
+            return null == content ? null : content.duplicate();
+        }
+
+        long getRevision() {
+            return revision;
+        }
+    }
+
+    /**
+     * 写入本地快照的配置文本和对应的revision
+     */
+    static final class Snapshot {
+
+        private final long revision;
+
+        private final ByteBuffer content;
+
+        Snapshot(long revision, ByteBuffer content) {
+            this.revision = revision;
+            this.content = content;
+        }
+
+        long getRevision() {
+            return revision;
+        }
+
+        /**
+         * @return 合并后的整个应用的配置文本，每次返回独立的position
+         */
+        ByteBuffer getContent() {
+            return content.duplicate();
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.jcflion;
+
+import com.coreos.jetcd.data.ByteSequence;
+import com.coreos.jetcd.data.KeyValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.jcflion.util.CollectionUtil;
+import com.jcflion.util.Constant;
+import com.jcflion.util.StringUtil;
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.ObjectMapper;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * etcd配置源：向manager查询应用对应的etcd地址和key，或直接指定etcd地址和key，拉取配置并持续监听。
+ * 启动时先加载本地配置快照，不依赖manager和etcd即可提供配置，再在后台向manager和etcd对账；
+ * 每次从etcd加载的配置都写入本地快照
+ *
+ * @author kanner
+ */
+public final class EtcdConfigSource implements ConfigSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EtcdConfigSource.class);
+    /**
+     * 前缀模式下写入本地快照的延迟，期间的多次修改只写一次
+     */
+    private static final long SNAPSHOT_DELAY_MILLIS = 1000L;
+
+    private String app;
+
+    private String managerEndpoint;
+
+    private String snapshotDir;
+    /**
+     * 直接监听的etcd地址和key，设置后不再向manager查询，也不加载本地快照
+     */
+    private String[] etcdEndpoints;
+
+    private String key;
+
+    private LocalSnapshotStore snapshotStore;
+    /**
+     * 执行配置加载，为null时使用内部的单线程
+     */
+    private Executor applyExecutor;
+    /**
+     * 内部创建的配置加载线程，关闭时一并关闭
+     */
+    private ExecutorService defaultApplyExecutor;
+    /**
+     * 前缀模式下在加载线程之外合并并写入本地快照，关闭时仍会写完已提交的快照
+     */
+    private ScheduledExecutorService snapshotExecutor;
+
+    private ConfigSink sink;
+
+    private EtcdConnection connection;
+
+    private EtcdWatcher.Subscription subscription;
+
+    private boolean closed;
+
+    public EtcdConfigSource() {
+
+    }
+
+    /**
+     * 通过manager发现etcd地址和key
+     *
+     * @param app 应用名
+     * @param managerEndpoint manager地址
+     */
+    public EtcdConfigSource(String app, String managerEndpoint) {
+        this.app = app;
+        this.managerEndpoint = managerEndpoint;
+    }
+
+    /**
+     * 直接监听etcd上的key
+     *
+     * @param etcdEndpoints etcd地址
+     * @param key etcd key，以"/"结尾时为应用前缀，前缀下每个key对应一个配置文件
+     */
+    public EtcdConfigSource(String[] etcdEndpoints, String key) {
+        setEtcd(etcdEndpoints, key);
+    }
+
+    @Override
+    public void start(ConfigSink sink) {
+        synchronized (this) {
+            this.sink = sink;
+        }
+        if (null != etcdEndpoints) {
+            startWatch(etcdEndpoints, key, null);
+            return;
+        }
+        if (StringUtil.isEmpty(app)) {
+            app = System.getProperty(Constant.CFLION_APP_NAME, System.getenv(Constant.CFLION_APP_NAME));
+        }
+        if (StringUtil.isEmpty(managerEndpoint)) {
+            managerEndpoint = System.getProperty(Constant.CFLION_MANAGER_ENDPOINT, System.getenv(Constant.CFLION_MANAGER_ENDPOINT));
+        }
+        if (StringUtil.isEmpty(snapshotDir)) {
+            snapshotDir = System.getProperty(Constant.CFLION_SNAPSHOT_DIR, System.getenv(Constant.CFLION_SNAPSHOT_DIR));
+        }
+        if (StringUtil.isEmpty(app)) {
+            fail("param: [app] is empty");
+            return;
+        }
+        snapshotStore = new LocalSnapshotStore(snapshotFile());
+        final LocalSnapshotStore.Record local = snapshotStore.load();
+        if (null == local) {
+            startFromManager();
+            return;
+        }
+        // 先用本地快照提供配置，再在后台向manager和etcd对账
+        sink.reload(local.getContent());
+        LOGGER.info("load local config snapshot, file={}, revision={}", snapshotStore.getFile(), local.getRevision());
+        sink.newThread("cflion-config-init", () -> {
+            WatcherRet watcherRet = null;
+            if (StringUtil.isNotEmpty(managerEndpoint)) {
+                watcherRet = retrieveWatcher();
+            }
+            if (null == watcherRet) {
+                LOGGER.warn("retrieve etcd endpoint fail, use endpoints from local config snapshot, key={}, endpoints={}",
+                        local.getKey(), local.getEndpoints());
+                watcherRet = new WatcherRet();
+                watcherRet.setKey(local.getKey());
+                watcherRet.setEndpoints(local.getEndpoints());
+            }
+            startWatch(watcherRet.getEndpoints(), watcherRet.getKey(), watcherRet.getKey().equals(local.getKey()) ? local : null);
+        }).start();
+    }
+
+    /**
+     * 没有本地快照时，同步向manager查询etcd地址后开始监听
+     */
+    private void startFromManager() {
+        if (StringUtil.isEmpty(managerEndpoint)) {
+            fail("param: [endpoint] is empty");
+            return;
+        }
+        final WatcherRet watcherRet = retrieveWatcher();
+        if (null == watcherRet) {
+            fail("retrieve etcd endpoint from manager fail");
+            return;
+        }
+        startWatch(watcherRet.getEndpoints(), watcherRet.getKey(), null);
+    }
+
+    /**
+     * 向manager查询应用对应的etcd地址和key
+     *
+     * @return etcd地址和key，查询失败时返回null
+     */
+    private WatcherRet retrieveWatcher() {
+        String path = "/v1/watchers";
+        if (!managerEndpoint.startsWith("http://") && !managerEndpoint.startsWith("https://")) {
+            managerEndpoint = "http://" + managerEndpoint;
+        }
+        if (managerEndpoint.endsWith("/")) {
+            path = "v1/watchers";
+        }
+        Unirest.setObjectMapper(new ObjectMapper() {
+            private com.fasterxml.jackson.databind.ObjectMapper jacksonObjectMapper
+                    = new com.fasterxml.jackson.databind.ObjectMapper();
+
+            public <T> T readValue(String value, Class<T> valueType) {
+                try {
+                    return jacksonObjectMapper.readValue(value, valueType);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            public String writeValue(Object value) {
+                try {
+                    return jacksonObjectMapper.writeValueAsString(value);
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        final String url = managerEndpoint + path;
+        String[] etcdEndpoints = null;
+        String key = null;
+        try {
+            final HttpResponse<ResponseRet> resp = Unirest.get(url).queryString("app", app).asObject(ResponseRet.class);
+            if (resp.getStatus() == 200) {
+                final ResponseRet responseRet = resp.getBody();
+                if (null != responseRet.getData()) {
+                    final WatcherRet watcherRet = responseRet.getData();
+                    etcdEndpoints = watcherRet.getEndpoints();
+                    key = watcherRet.getKey();
+                }
+            } else {
+                LOGGER.error("init config fail when retrieve etcd endpoint, status={}, body={}", resp.getStatus(), resp.getBody());
+                return null;
+            }
+        } catch (UnirestException | RuntimeException e) {
+            LOGGER.error("init config error", e);
+            return null;
+        }
+        if (CollectionUtil.isEmpty(etcdEndpoints) || StringUtil.isEmpty(key)) {
+            LOGGER.error("init config fail, because [key={}] and [etcd endpoints={}] illegal", key, etcdEndpoints);
+            return null;
+        }
+        final WatcherRet watcherRet = new WatcherRet();
+        watcherRet.setKey(key);
+        watcherRet.setEndpoints(etcdEndpoints);
+        return watcherRet;
+    }
+
+    private Path snapshotFile() {
+        final String dir = StringUtil.isEmpty(snapshotDir)
+                ? Paths.get(System.getProperty("user.home"), ".cflion").toString() : snapshotDir;
+        return Paths.get(dir, app + ".snapshot");
+    }
+
+    /**
+     * 拉取配置并开始监听。key以"/"结尾时，应用配置按配置文件拆分存放在该前缀下，每个key对应一个配置文件，
+     * 修改某个配置文件时只重建该配置文件，其他配置文件的配置项和灰度规则保持不变
+     *
+     * @param etcdEndpoints etcd地址
+     * @param key etcd key，以"/"结尾时为应用前缀
+     * @param local 已加载的本地快照，etcd上的配置未变化时不再重复加载，没有或key不一致时为null
+     */
+    private synchronized void startWatch(String[] etcdEndpoints, String key, LocalSnapshotStore.Record local) {
+        if (closed) {
+            LOGGER.warn("app={} has been closed, skip watching key={}", app, key);
+            return;
+        }
+        if (null != subscription) {
+            LOGGER.warn("app={} is already watching, skip watching key={}", app, key);
+            return;
+        }
+        Executor executor = applyExecutor;
+        if (null == executor) {
+            defaultApplyExecutor = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "cflion-config-apply");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor = defaultApplyExecutor;
+        }
+        final boolean prefix = key.endsWith("/");
+        final EtcdWatcher.Listener listener = prefix
+                ? configFilesListener(etcdEndpoints, key, local, executor)
+                : configListener(etcdEndpoints, key, null == local ? 0L : local.getRevision(), executor);
+        // 同一etcd集群上的所有应用共用一个监听线程和一个watch
+        connection = EtcdConnection.acquire(etcdEndpoints);
+        subscription = connection.watch(key, prefix, listener, sink::newThread);
+    }
+
+    /**
+     * 整个应用配置存放在一个key中，每次修改都整体加载
+     */
+    private EtcdWatcher.Listener configListener(String[] etcdEndpoints, String key, long localRevision, Executor executor) {
+        final ApplyMailbox<KeyValue> mailbox = new ApplyMailbox<>(executor, KeyValue::getModRevision,
+                keyValue -> apply(etcdEndpoints, key, keyValue));
+        return new EtcdWatcher.Listener() {
+            @Override
+            public void onGet(List<KeyValue> keyValues, long revision) {
+                if (keyValues.isEmpty()) {
+                    return;
+                }
+                final KeyValue keyValue = keyValues.get(0);
+                if (0L != localRevision && keyValue.getModRevision() == localRevision) {
+                    LOGGER.info("local config snapshot is up to date, revision={}", localRevision);
+                    return;
+                }
+                mailbox.accept(keyValue);
+            }
+
+            @Override
+            public void onPut(KeyValue keyValue) {
+                mailbox.accept(keyValue);
+            }
+
+            @Override
+            public void onDelete(KeyValue keyValue) {
+                // 应用配置被删除时保留已加载的配置
+            }
+        };
+    }
+
+    /**
+     * 应用配置按配置文件拆分存放在前缀下，加载阶段一次只重建自上次加载以来变化的配置文件。
+     * 启动后首次拉取时，若配置文件与本地快照相同且都没有在本地快照的revision之后修改，则不再整体加载和重写本地快照
+     */
+    private EtcdWatcher.Listener configFilesListener(String[] etcdEndpoints, String key, LocalSnapshotStore.Record local,
+                                                     Executor executor) {
+        final ConfigFileSet fileSet = new ConfigFileSet(key);
+        final ApplyMailbox<ConfigFileSet> snapshotMailbox = null == snapshotStore ? null : snapshotMailbox(etcdEndpoints, key);
+        final ApplyMailbox<ConfigFileSet> mailbox = new ApplyMailbox<>(executor, ConfigFileSet::getRevision,
+                files -> applyFiles(files, snapshotMailbox));
+        final long localRevision = null == local ? 0L : local.getRevision();
+        final Set<String> localFilenames = null == local ? null : ConfigFileSet.configFilenames(local.getContent());
+        return new EtcdWatcher.Listener() {
+            /**
+             * 只在监听线程中访问
+             */
+            private boolean first = true;
+
+            @Override
+            public void onGet(List<KeyValue> keyValues, long revision) {
+                fileSet.replaceAll(keyValues, revision);
+                final boolean upToDate = first && fileSet.isUpToDate(keyValues, localRevision, localFilenames);
+                first = false;
+                if (upToDate) {
+                    LOGGER.info("local config snapshot is up to date, key={}, revision={}", key, localRevision);
+                    return;
+                }
+                mailbox.accept(fileSet);
+            }
+
+            @Override
+            public void onPut(KeyValue keyValue) {
+                if (fileSet.put(keyValue)) {
+                    mailbox.accept(fileSet);
+                }
+            }
+
+            @Override
+            public void onDelete(KeyValue keyValue) {
+                if (fileSet.remove(keyValue)) {
+                    mailbox.accept(fileSet);
+                }
+            }
+        };
+    }
+
+    /**
+     * 加载etcd上的配置，并写入本地快照
+     */
+    private void apply(String[] etcdEndpoints, String key, KeyValue keyValue) {
+        final ByteSequence value = keyValue.getValue();
+        if (null == value) {
+            return;
+        }
+        final ByteBuffer content = value.getByteString().asReadOnlyByteBuffer();
+        if (sink.reload(content) && null != snapshotStore) {
+            snapshotStore.save(keyValue.getModRevision(), key, etcdEndpoints, content);
+        }
+    }
+
+    /**
+     * 加载自上次加载以来变化的配置文件，加载生效后提交本地快照的写入，不在加载线程中合并配置文本和写文件
+     *
+     * @param snapshotMailbox 写入本地快照，不写本地快照时为null
+     */
+    private void applyFiles(ConfigFileSet fileSet, ApplyMailbox<ConfigFileSet> snapshotMailbox) {
+        final ConfigFileSet.Changes changes = fileSet.drainChanges();
+        if (null == changes) {
+            return;
+        }
+        final boolean loaded = changes.isReplaced()
+                ? sink.reload(changes.getContent()) : sink.reloadFiles(changes.getFiles());
+        if (loaded && null != snapshotMailbox) {
+            snapshotMailbox.accept(fileSet);
+        }
+    }
+
+    /**
+     * 延迟写入本地快照：提交后等待 SNAPSHOT_DELAY_MILLIS 再合并当时的全部配置文件写入，
+     * 等待和写入期间的多次提交合并为一次，连续修改配置文件时不会每次都重写整个本地快照
+     */
+    private ApplyMailbox<ConfigFileSet> snapshotMailbox(String[] etcdEndpoints, String key) {
+        snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "cflion-config-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final ScheduledExecutorService executor = snapshotExecutor;
+        return new ApplyMailbox<>(command -> executor.schedule(command, SNAPSHOT_DELAY_MILLIS, TimeUnit.MILLISECONDS),
+                ConfigFileSet::getRevision, files -> {
+                    final ConfigFileSet.Snapshot snapshot = files.snapshot();
+                    snapshotStore.save(snapshot.getRevision(), key, etcdEndpoints, snapshot.getContent());
+                });
+    }
+
+    private void fail(String message) {
+        sink.fail("init config fail, app=" + app + ", " + message, null);
+    }
+
+    /**
+     * 取消订阅并释放etcd连接，最后一个使用该etcd集群的应用关闭时断开连接
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (null != subscription) {
+                subscription.close();
+                connection.release();
+            }
+            if (null != defaultApplyExecutor) {
+                defaultApplyExecutor.shutdown();
+            }
+            if (null != snapshotExecutor) {
+                snapshotExecutor.shutdown();
+            }
+        }
+    }
+
+    public void setApp(String app) {
+        this.app = app;
+    }
+
+    public void setManagerEndpoint(String managerEndpoint) {
+        this.managerEndpoint = managerEndpoint;
+    }
+
+    /**
+     * 设置本地配置快照的存放目录，默认为 ${user.home}/.cflion
+     *
+     * @param snapshotDir 本地配置快照的存放目录
+     */
+    public void setSnapshotDir(String snapshotDir) {
+        this.snapshotDir = snapshotDir;
+    }
+
+    /**
+     * 直接监听etcd上的key，须在 start() 之前调用，不再向manager查询，也不加载本地快照
+     *
+     * @param etcdEndpoints etcd地址
+     * @param key etcd key，以"/"结尾时为应用前缀，前缀下每个key对应一个配置文件
+     */
+    public void setEtcd(String[] etcdEndpoints, String key) {
+        if (CollectionUtil.isEmpty(etcdEndpoints) || StringUtil.isEmpty(key)) {
+            throw new IllegalArgumentException("illegal etcd key, key=" + key + ", endpoints=" + etcdEndpoints);
+        }
+        this.etcdEndpoints = etcdEndpoints;
+        this.key = key;
+    }
+
+    /**
+     * 设置执行配置加载的线程池，须在 start() 之前调用，关闭时不会关闭该线程池。
+     * 默认使用内部的单线程
+     *
+     * @param applyExecutor 执行配置加载的线程池
+     */
+    public void setApplyExecutor(Executor applyExecutor) {
+        this.applyExecutor = applyExecutor;
+    }
+
+    @Override
+    public String toString() {
+        return "EtcdConfigSource [app=" + app + ", managerEndpoint=" + managerEndpoint + ", key=" + key + "]";
+    }
+
+    /**
+     * 处理 etcd://127.0.0.1:2379,127.0.0.2:2379/key 形式的地址：
+     * 第一个"/"之前为逗号分隔的etcd地址，之后为etcd key，key以"/"结尾时为应用前缀
+     */
+    public static final class Provider implements ConfigSourceProvider {
+
+        @Override
+        public String scheme() {
+            return "etcd";
+        }
+
+        @Override
+        public ConfigSource create(String location) {
+            final String address = location.startsWith("etcd://") ? location.substring("etcd://".length()) : "";
+            final int slash = address.indexOf('/');
+            if (slash <= 0 || slash == address.length() - 1) {
+                throw new IllegalArgumentException("illegal etcd config source location: " + location);
+            }
+            final String[] hosts = address.substring(0, slash).split(",");
+            final String[] endpoints = new String[hosts.length];
+            for (int i = 0; i < hosts.length; ++i) {
+                final String host = hosts[i].trim();
+                endpoints[i] = host.startsWith("http://") || host.startsWith("https://") ? host : "http://" + host;
+            }
+            return new EtcdConfigSource(endpoints, address.substring(slash + 1));
+        }
+    }
+}
+
+class ResponseRet {
+
+    String msg;
+
+    WatcherRet data;
+
+    public String getMsg() {
+        return msg;
+    }
+
+    public void setMsg(String msg) {
+        this.msg = msg;
+    }
+
+    public WatcherRet getData() {
+        return data;
+    }
+
+    public void setData(WatcherRet data) {
+        this.data = data;
+    }
+
+}
+
+class WatcherRet {
+
+    String key;
+
+    String[] endpoints;
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String[] getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(String[] endpoints) {
+        this.endpoints = endpoints;
+    }
+}
+
+
@@ -0,0 +1,194 @@
+package com.jcflion;
+
+import com.coreos.jetcd.Client;
+import com.coreos.jetcd.Watch;
+import com.coreos.jetcd.data.ByteSequence;
+import com.coreos.jetcd.kv.GetResponse;
+import com.coreos.jetcd.options.GetOption;
+import com.coreos.jetcd.options.WatchOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * 同一etcd集群共享的连接。同一JVM中的多个应用和类库监听同一集群时共用一个 Client 和一个 EtcdWatcher，
+ * 所有订阅的key通过同一个监听线程和同一个watch监听，连接出错时由该监听线程统一重连。
+ * 连接按引用计数管理，最后一个使用方释放时关闭
+ *
+ * @author kanner
+ */
+final class EtcdConnection implements EtcdWatcher.Transport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EtcdConnection.class);
+
+    /**
+     * 以排序后的etcd地址为key，访问需持有 EtcdConnection.class 锁
+     */
+    private static final Map<String, EtcdConnection> CONNECTIONS = new HashMap<>();
+
+    private final String id;
+
+    private final String[] endpoints;
+    /**
+     * 引用计数，访问需持有 EtcdConnection.class 锁
+     */
+    private int references;
+
+    private final EtcdWatcher watcher = new EtcdWatcher(this);
+
+    private Client client;
+    /**
+     * 当前 Client 上的拉取和监听，重连时与 Client 一起重新创建
+     */
+    private ClientSession session;
+
+    private boolean closed;
+
+    private EtcdConnection(String id, String[] endpoints) {
+        this.id = id;
+        this.endpoints = endpoints;
+    }
+
+    /**
+     * 获取etcd集群的共享连接，引用计数加一，使用完毕后须调用 release()
+     *
+     * @param etcdEndpoints etcd地址，没有协议时默认为http
+     * @return 共享连接
+     */
+    static EtcdConnection acquire(String[] etcdEndpoints) {
+        final String[] endpoints = new String[etcdEndpoints.length];
+        for (int i = 0; i != etcdEndpoints.length; ++i) {
+            final String endpoint = etcdEndpoints[i];
+            if (!endpoint.startsWith("http://") && !endpoint.startsWith("https://")) {
+                endpoints[i] = "http://" + endpoint;
+            } else {
+                endpoints[i] = endpoint;
+            }
+        }
+        final String[] sorted = endpoints.clone();
+        Arrays.sort(sorted);
+        final String id = String.join(",", sorted);
+        synchronized (EtcdConnection.class) {
+            EtcdConnection connection = CONNECTIONS.get(id);
+            if (null == connection) {
+                connection = new EtcdConnection(id, endpoints);
+                CONNECTIONS.put(id, connection);
+            }
+            ++connection.references;
+            return connection;
+        }
+    }
+
+    /**
+     * 释放共享连接，引用计数减一，最后一个使用方释放时关闭连接
+     */
+    void release() {
+        synchronized (EtcdConnection.class) {
+            if (references <= 0) {
+                return;
+            }
+            if (--references > 0) {
+                return;
+            }
+            CONNECTIONS.remove(id);
+        }
+        watcher.close();
+        synchronized (this) {
+            closed = true;
+            closeClient();
+        }
+        LOGGER.info("close etcd connection [etcd endpoints={}]", id);
+    }
+
+    /**
+     * 订阅key或前缀，由该连接唯一的监听线程拉取并监听
+     *
+     * @param key etcd key
+     * @param prefix 是否订阅以key为前缀的所有key
+     * @param listener 配置变化时的回调，在监听线程中执行，不应阻塞
+     * @param threads 没有监听线程时用于创建监听线程，参数为线程名和任务
+     * @return 订阅，关闭时取消订阅，之后仍须调用 release()
+     */
+    EtcdWatcher.Subscription watch(String key, boolean prefix, EtcdWatcher.Listener listener,
+                                   BiFunction<String, Runnable, Thread> threads) {
+        return watcher.subscribe(key, prefix, listener, threads);
+    }
+
+    /**
+     * 获取当前的 Client，重连后重新创建
+     *
+     * @return 当前 Client 上的拉取和监听
+     */
+    @Override
+    public synchronized EtcdWatcher.Session session() {
+        if (closed) {
+            throw new IllegalStateException("etcd connection is closed, endpoints=" + id);
+        }
+        if (null == client) {
+            client = Client.builder().endpoints(endpoints).build();
+            session = new ClientSession(client);
+        }
+        return session;
+    }
+
+    /**
+     * 连接出错时关闭 Client，下次 session() 时重新创建。只由该连接的监听线程调用，
+     * 所有订阅随监听线程一起重新建立watch
+     *
+     * @param broken 出错的连接
+     */
+    @Override
+    public synchronized void reconnect(EtcdWatcher.Session broken) {
+        if (null != broken && broken == session) {
+            closeClient();
+        }
+    }
+
+    private void closeClient() {
+        if (null == client) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (Exception e) {
+            LOGGER.warn("close etcd client error [etcd endpoints={}]", id, e);
+        }
+        client = null;
+        session = null;
+    }
+
+    String[] getEndpoints() {
+        return endpoints.clone();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    private static final class ClientSession implements EtcdWatcher.Session {
+
+        private final Client client;
+
+        private ClientSession(Client client) {
+            this.client = client;
+        }
+
+        @Override
+        public GetResponse get(ByteSequence key, boolean prefix) throws InterruptedException, ExecutionException {
+            return prefix
+                    ? client.getKVClient().get(key, GetOption.newBuilder().withPrefix(key).build()).get()
+                    : client.getKVClient().get(key).get();
+        }
+
+        @Override
+        public Watch.Watcher watch(ByteSequence from, ByteSequence end, long revision) {
+            return client.getWatchClient().watch(from, WatchOption.newBuilder().withRevision(revision).withRange(end).build());
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.jcflion;
+
+import com.coreos.jetcd.Watch;
+import com.coreos.jetcd.common.exception.ClosedWatcherException;
+import com.coreos.jetcd.common.exception.CompactedException;
+import com.coreos.jetcd.data.ByteSequence;
+import com.coreos.jetcd.data.KeyValue;
+import com.coreos.jetcd.kv.GetResponse;
+import com.coreos.jetcd.watch.WatchEvent;
+import com.coreos.jetcd.watch.WatchResponse;
+import com.google.protobuf.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 同一etcd集群上所有应用配置的拉取和监听，每个 EtcdConnection 只有一个 EtcdWatcher 和一个监听线程。
+ * 各应用订阅的key或前缀合并为一个覆盖全部订阅的key范围，只建立一个watch，收到的事件按key分发给各自的监听器；
+ * 订阅和取消订阅时关闭当前watch，从各订阅已处理到的revision之后重新建立。
+ * 连接异常时按指数退避加随机抖动重连整个连接，重连后从各订阅最后处理过的revision之后继续监听，
+ * 不再重新拉取全量配置；只有在该revision已被etcd压缩时才重新拉取受影响的订阅。
+ * 对etcd的访问经由 Transport 和 Session，上述状态转换可以脱离etcd测试
+ *
+ * @author kanner
+ */
+final class EtcdWatcher implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EtcdWatcher.class);
+
+    private static final long BACKOFF_INITIAL_MILLIS = 500L;
+
+    private static final long BACKOFF_MAX_MILLIS = 30_000L;
+
+    private final Transport transport;
+
+    private final Backoff backoff;
+    /**
+     * 全部订阅，访问需持有 this 锁
+     */
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    /**
+     * 订阅变化后需要重建watch，访问需持有 this 锁
+     */
+    private boolean restart;
+    /**
+     * 当前的watch，订阅变化时关闭它以唤醒阻塞的 listen()，访问需持有 this 锁
+     */
+    private Watch.Watcher current;
+    /**
+     * 监听线程，没有订阅时退出，访问需持有 this 锁
+     */
+    private Thread thread;
+
+    private boolean closed;
+
+    /**
+     * @param transport 所属的etcd共享连接
+     */
+    EtcdWatcher(Transport transport) {
+        this(transport, new Backoff(BACKOFF_INITIAL_MILLIS, BACKOFF_MAX_MILLIS));
+    }
+
+    /**
+     * @param transport 访问etcd的方式
+     * @param backoff 重连的退避策略
+     */
+    EtcdWatcher(Transport transport, Backoff backoff) {
+        this.transport = transport;
+        this.backoff = backoff;
+    }
+
+    /**
+     * 订阅key或前缀，首次订阅时创建监听线程
+     *
+     * @param key etcd key
+     * @param prefix 是否订阅以key为前缀的所有key
+     * @param listener 配置变化时的回调，在监听线程中执行，不应阻塞
+     * @param threads 没有监听线程时用于创建监听线程，参数为线程名和任务
+     * @return 订阅，关闭时取消订阅
+     */
+    synchronized Subscription subscribe(String key, boolean prefix, Listener listener,
+                                        BiFunction<String, Runnable, Thread> threads) {
+        if (closed) {
+            throw new IllegalStateException("etcd connection is closed, endpoints=" + transport);
+        }
+        final Subscription subscription = new Subscription(key, prefix, listener);
+        subscriptions.add(subscription);
+        rebuild();
+        if (null == thread) {
+            thread = threads.apply("cflion-etcd-watch", this);
+            thread.start();
+        }
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 停止监听线程，由 EtcdConnection 在最后一个使用方释放时调用
+     */
+    void close() {
+        final Thread running;
+        synchronized (this) {
+            closed = true;
+            running = thread;
+            rebuild();
+        }
+        if (null != running) {
+            running.interrupt();
+        }
+    }
+
+    /**
+     * 调用方需持有 this 锁
+     */
+    private void rebuild() {
+        restart = true;
+        close(current);
+        current = null;
+    }
+
+    @Override
+    public void run() {
+        Session session = null;
+        Watch.Watcher watch = null;
+        List<Subscription> watching = null;
+        while (true) {
+            try {
+                if (null == watch) {
+                    watching = watching();
+                    if (null == watching) {
+                        return;
+                    }
+                    if (null == session) {
+                        session = transport.session();
+                    }
+                    for (final Subscription subscription : watching) {
+                        if (!subscription.loaded && !subscription.closed) {
+                            get(session, subscription);
+                        }
+                    }
+                    watch = open(session, watching);
+                    if (null == watch) {
+                        continue;
+                    }
+                }
+                final WatchResponse watchResponse = watch.listen();
+                backoff.reset();
+                dispatch(watching, watchResponse);
+            } catch (InterruptedException e) {
+                if (stop()) {
+                    return;
+                }
+                Thread.interrupted();
+            } catch (CompactedException e) {
+                LOGGER.warn("watch revision has been compacted, reload compacted keys, [etcd endpoints={}] [compacted revision={}]",
+                        transport, e.getCompactedRevision());
+                for (final Subscription subscription : watching) {
+                    if (subscription.revision < e.getCompactedRevision()) {
+                        subscription.loaded = false;
+                    }
+                }
+                close(watch);
+                watch = null;
+            } catch (ClosedWatcherException e) {
+                // 订阅变化时关闭了watch，直接重建；否则按连接异常处理
+                close(watch);
+                watch = null;
+                if (!isRestarting()) {
+                    session = reconnect(session, e);
+                }
+            } catch (ExecutionException | RuntimeException e) {
+                close(watch);
+                watch = null;
+                if (stop()) {
+                    return;
+                }
+                session = reconnect(session, e);
+            }
+        }
+    }
+
+    /**
+     * 取出需要监听的订阅并清除重建标记
+     *
+     * @return 订阅，已关闭或没有订阅时返回null，并退出监听线程
+     */
+    private List<Subscription> watching() {
+        synchronized (this) {
+            if (closed || subscriptions.isEmpty()) {
+                thread = null;
+                return null;
+            }
+            restart = false;
+            return new ArrayList<>(subscriptions);
+        }
+    }
+
+    /**
+     * @return 是否已关闭或没有订阅，此时退出监听线程
+     */
+    private synchronized boolean stop() {
+        if (closed || subscriptions.isEmpty()) {
+            thread = null;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized boolean isRestarting() {
+        return restart || closed;
+    }
+
+    /**
+     * 重连整个连接，所有订阅共用同一个 Session，只有监听线程会重连
+     *
+     * @return null，下一轮循环重新获取 Session
+     */
+    private Session reconnect(Session session, Exception cause) {
+        final long delay = backoff.nextDelayMillis();
+        LOGGER.error("watch occurs connection error, reconnect after {}ms, [etcd endpoints={}]", delay, transport, cause);
+        transport.reconnect(session);
+        sleep(delay);
+        return null;
+    }
+
+    /**
+     * 拉取订阅的全量配置，该订阅从拉取时的revision之后开始监听
+     */
+    private void get(Session session, Subscription subscription) throws InterruptedException, ExecutionException {
+        final GetResponse getResponse = session.get(ByteSequence.fromByteString(subscription.key), subscription.prefix);
+        subscription.revision = getResponse.getHeader().getRevision();
+        subscription.loaded = true;
+        try {
+            subscription.listener.onGet(getResponse.getKvs(), subscription.revision);
+        } catch (RuntimeException e) {
+            LOGGER.error("apply config error [key={}] [revision={}]", subscription, subscription.revision, e);
+        }
+    }
+
+    /**
+     * 以覆盖全部订阅的key范围建立一个watch，从各订阅中最小的已处理revision之后开始
+     *
+     * @return watch，建立期间订阅发生变化时返回null
+     */
+    private Watch.Watcher open(Session session, List<Subscription> watching) {
+        ByteString from = null;
+        ByteString to = null;
+        long revision = Long.MAX_VALUE;
+        for (final Subscription subscription : watching) {
+            if (null == from || compare(subscription.key, from) < 0) {
+                from = subscription.key;
+            }
+            if (null == to || (!to.isEmpty() && (subscription.end.isEmpty() || compare(subscription.end, to) > 0))) {
+                to = subscription.end;
+            }
+            revision = Math.min(revision, subscription.revision);
+        }
+        final Watch.Watcher watch = session.watch(ByteSequence.fromByteString(from),
+                ByteSequence.fromByteString(to.isEmpty() ? ByteString.copyFrom(new byte[]{0}) : to), revision + 1);
+        synchronized (this) {
+            if (restart || closed) {
+                close(watch);
+                return null;
+            }
+            current = watch;
+        }
+        return watch;
+    }
+
+    /**
+     * 把事件分发给匹配的订阅，每个订阅只处理其已处理revision之后的事件
+     */
+    private void dispatch(List<Subscription> watching, WatchResponse watchResponse) {
+        long revision = 0L;
+        for (final WatchEvent watchEvent : watchResponse.getEvents()) {
+            final KeyValue keyValue = watchEvent.getKeyValue();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("etcd watch type={}, key={}, value={}, revision={}",
+                        watchEvent.getEventType(),
+                        Optional.ofNullable(keyValue.getKey()).map(ByteSequence::toStringUtf8).orElse(""),
+                        Optional.ofNullable(keyValue.getValue()).map(ByteSequence::toStringUtf8).orElse(""),
+                        keyValue.getModRevision()
+                );
+            }
+            revision = Math.max(revision, keyValue.getModRevision());
+            if (null == keyValue.getKey()) {
+                continue;
+            }
+            final ByteString key = keyValue.getKey().getByteString();
+            for (final Subscription subscription : watching) {
+                if (subscription.closed || keyValue.getModRevision() <= subscription.revision || !subscription.matches(key)) {
+                    continue;
+                }
+                try {
+                    if (WatchEvent.EventType.PUT == watchEvent.getEventType()) {
+                        subscription.listener.onPut(keyValue);
+                    } else if (WatchEvent.EventType.DELETE == watchEvent.getEventType()) {
+                        subscription.listener.onDelete(keyValue);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("apply config error [key={}] [revision={}]", subscription, keyValue.getModRevision(), e);
+                }
+            }
+        }
+        // 事件按revision顺序到达，该revision之前的事件所有订阅都已处理
+        for (final Subscription subscription : watching) {
+            subscription.revision = Math.max(subscription.revision, revision);
+        }
+    }
+
+    /**
+     * 按无符号字节比较
+     */
+    private static int compare(ByteString a, ByteString b) {
+        final int length = Math.min(a.size(), b.size());
+        for (int i = 0; i < length; ++i) {
+            final int diff = (a.byteAt(i) & 0xFF) - (b.byteAt(i) & 0xFF);
+            if (0 != diff) {
+                return diff;
+            }
+        }
+        return a.size() - b.size();
+    }
+
+    /**
+     * 以prefix为前缀的所有key之后的第一个key：去掉末尾的0xFF后把最后一个字节加一，全为0xFF时为空
+     */
+    private static ByteString prefixEnd(ByteString prefix) {
+        final byte[] bytes = prefix.toByteArray();
+        for (int i = bytes.length - 1; i >= 0; --i) {
+            if (bytes[i] != (byte) 0xFF) {
+                ++bytes[i];
+                return ByteString.copyFrom(bytes, 0, i + 1);
+            }
+        }
+        return ByteString.EMPTY;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void close(AutoCloseable closeable) {
+        if (null == closeable) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            LOGGER.warn("close etcd resource error", e);
+        }
+    }
+
+    /**
+     * 一个key或前缀的订阅
+     */
+    final class Subscription implements AutoCloseable {
+
+        private final ByteString key;
+
+        private final boolean prefix;
+        /**
+         * 订阅范围的结束key(不含)，为空表示到最后一个key
+         */
+        private final ByteString end;
+
+        private final Listener listener;
+        /**
+         * 已处理到的revision，只在监听线程中访问
+         */
+        private long revision;
+        /**
+         * 是否已拉取过全量配置，只在监听线程中访问
+         */
+        private boolean loaded;
+
+        private volatile boolean closed;
+
+        private Subscription(String key, boolean prefix, Listener listener) {
+            this.key = ByteString.copyFromUtf8(key);
+            this.prefix = prefix;
+            this.end = prefix ? prefixEnd(this.key) : this.key.concat(ByteString.copyFrom(new byte[]{0}));
+            this.listener = listener;
+        }
+
+        private boolean matches(ByteString other) {
+            return prefix ? other.startsWith(key) : other.equals(key);
+        }
+
+        /**
+         * 取消订阅，之后不再回调监听器
+         */
+        @Override
+        public void close() {
+            closed = true;
+            unsubscribe(this);
+        }
+
+        @Override
+        public String toString() {
+            return prefix ? key.toStringUtf8() + "*" : key.toStringUtf8();
+        }
+    }
+
+    /**
+     * 监听线程访问etcd的方式，由 EtcdConnection 实现
+     */
+    interface Transport {
+
+        /**
+         * @return 当前连接，重连后返回新的连接
+         */
+        Session session();
+
+        /**
+         * 连接出错时断开，下次 session() 时重新连接
+         *
+         * @param broken 出错的连接
+         */
+        void reconnect(Session broken);
+    }
+
+    /**
+     * 一次连接上的拉取和监听
+     */
+    interface Session {
+
+        /**
+         * @param key etcd key
+         * @param prefix 是否拉取以key为前缀的所有key
+         * @return 拉取结果
+         */
+        GetResponse get(ByteSequence key, boolean prefix) throws InterruptedException, ExecutionException;
+
+        /**
+         * @param from 监听范围的起始key(含)
+         * @param end 监听范围的结束key(不含)，"\0"表示到最后一个key
+         * @param revision 从该revision开始(含)
+         * @return watch
+         */
+        Watch.Watcher watch(ByteSequence from, ByteSequence end, long revision);
+    }
+
+    /**
+     * 配置变化的回调，在监听线程中执行，不应阻塞
+     */
+    interface Listener {
+
+        /**
+         * 拉取到全量配置，订阅时以及监听的revision被压缩后触发
+         *
+         * @param keyValues 当前的全部key，前缀模式下可能有多个
+         * @param revision 拉取时etcd的revision
+         */
+        void onGet(List<KeyValue> keyValues, long revision);
+
+        void onPut(KeyValue keyValue);
+
+        void onDelete(KeyValue keyValue);
+    }
+}
@@ -0,0 +1,124 @@
+package com.jcflion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过manager发现etcd并加载应用配置，等价于以 EtcdConfigSource 启动 ConfigLoader
+ *
+ * @author kanner
+ */
+public class InitConfig implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InitConfig.class);
+
+    private final EtcdConfigSource source = new EtcdConfigSource();
+
+    private final ConfigLoader loader = new ConfigLoader(source);
+
+    public InitConfig() {
+
+    }
+
+    public InitConfig(String app, String managerEndpoint) {
+        setApp(app);
+        setManagerEndpoint(managerEndpoint);
+    }
+
+    /**
+     * 在后台线程中初始化，服务发现和etcd连接与调用方的其他启动步骤并行进行
+     *
+     * @return 首个配置快照生效时完成，初始化失败时异常完成
+     */
+    public CompletableFuture<ConfigSnapshot> initAsync() {
+        return loader.startAsync();
+    }
+
+    /**
+     * 等待首个配置快照生效
+     *
+     * @param timeout 超时时间
+     * @param unit 超时时间单位
+     * @return 是否已生效，超时或初始化失败时返回false
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return loader.awaitReady(timeout, unit);
+    }
+
+    /**
+     * 首个配置快照是否已生效，可用于健康检查
+     *
+     * @return 是否已生效
+     */
+    public boolean isReady() {
+        return loader.isReady();
+    }
+
+    public void init() {
+        loader.start();
+    }
+
+    /**
+     * 不经过manager，直接拉取并监听etcd上的key
+     *
+     * @param etcdEndpoints etcd地址
+     * @param key etcd key，以"/"结尾时为应用前缀，前缀下每个key对应一个配置文件
+     */
+    public void startWatch(String[] etcdEndpoints, String key) {
+        source.setEtcd(etcdEndpoints, key);
+        loader.start();
+    }
+
+    /**
+     * 停止监听并释放etcd连接，最后一个使用该etcd集群的应用关闭时断开连接。
+     * 已加载的配置仍然可以读取
+     */
+    @Override
+    public void close() {
+        loader.close();
+        LOGGER.info("close config, source={}", source);
+    }
+
+    public void setApp(String app) {
+        source.setApp(app);
+    }
+
+    public void setManagerEndpoint(String managerEndpoint) {
+        source.setManagerEndpoint(managerEndpoint);
+    }
+
+    /**
+     * 设置本地配置快照的存放目录，默认为 ${user.home}/.cflion
+     *
+     * @param snapshotDir 本地配置快照的存放目录
+     */
+    public void setSnapshotDir(String snapshotDir) {
+        source.setSnapshotDir(snapshotDir);
+    }
+
+    /**
+     * 设置创建初始化线程和监听线程的 ThreadFactory，须在 init() 之前调用。
+     * 默认在JDK 21及以上使用虚拟线程，否则使用守护线程
+     *
+     * @param threadFactory 线程工厂
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        loader.setThreadFactory(threadFactory);
+    }
+
+    /**
+     * 设置执行配置加载的线程池，须在 init() 之前调用，关闭时不会关闭该线程池。
+     * 默认使用内部的单线程
+     *
+     * @param applyExecutor 执行配置加载的线程池
+     */
+    public void setApplyExecutor(Executor applyExecutor) {
+        source.setApplyExecutor(applyExecutor);
+    }
+}
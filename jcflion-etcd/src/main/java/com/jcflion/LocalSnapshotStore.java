@@ -0,0 +1,244 @@
+package com.jcflion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 本地配置快照文件，保存最近一次生效的配置文本、etcd revision以及服务发现得到的etcd地址和key，
+ * 启动时先加载本地快照，不依赖manager和etcd即可提供配置。
+ * 文件格式(大端)：
+ * <pre>
+ * int    魔数 "CFLS"
+ * int    格式版本
+ * long   etcd revision
+ * int    key字节数，key(UTF-8)
+ * int    etcd地址数量，每个地址：int 字节数，地址(UTF-8)
+ * int    配置文本字节数，配置文本(UTF-8)
+ * long   以上所有字节的CRC32
+ * </pre>
+ * 写入时先写临时文件再原子替换，进程在写入过程中退出也不会留下损坏的快照
+ *
+ * @author kanner
+ */
+final class LocalSnapshotStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalSnapshotStore.class);
+
+    private static final int MAGIC = 0x43464C53;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * 除配置文本外的头部最大字节数，防止损坏的文件导致分配超大数组
+     */
+    private static final int MAX_HEADER_STRING_BYTES = 64 * 1024;
+
+    private final Path file;
+
+    LocalSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * 读取本地快照，配置文本通过内存映射读取，不复制到堆内
+     *
+     * @return 本地快照，文件不存在或已损坏时返回null
+     */
+    Record load() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final Record record = decode(buffer);
+            if (null == record) {
+                LOGGER.warn("local config snapshot is corrupted, ignore it, file={}", file);
+            }
+            return record;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("load local config snapshot fail, file={}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存本地快照，失败只记录日志，不影响配置的使用
+     *
+     * @param revision etcd revision
+     * @param key etcd key
+     * @param endpoints etcd地址
+     * @param content UTF-8编码的配置文本，不会修改其position
+     */
+    void save(long revision, String key, String[] endpoints, ByteBuffer content) {
+        Path tmp = null;
+        try {
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            final byte[][] endpointBytes = new byte[endpoints.length][];
+            int headerSize = 4 + 4 + 8 + 4 + keyBytes.length + 4;
+            for (int i = 0; i < endpoints.length; ++i) {
+                endpointBytes[i] = endpoints[i].getBytes(StandardCharsets.UTF_8);
+                headerSize += 4 + endpointBytes[i].length;
+            }
+            final ByteBuffer header = ByteBuffer.allocate(headerSize + 4);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(revision);
+            header.putInt(keyBytes.length).put(keyBytes);
+            header.putInt(endpointBytes.length);
+            for (final byte[] endpoint : endpointBytes) {
+                header.putInt(endpoint.length).put(endpoint);
+            }
+            final ByteBuffer body = content.duplicate();
+            header.putInt(body.remaining());
+            ((Buffer) header).flip();
+
+            final CRC32 crc = new CRC32();
+            crc.update(header.duplicate());
+            crc.update(body.duplicate());
+            final ByteBuffer trailer = ByteBuffer.allocate(8);
+            trailer.putLong(crc.getValue());
+            ((Buffer) trailer).flip();
+
+            final Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                final ByteBuffer[] buffers = {header, body, trailer};
+                while (trailer.hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("save local config snapshot, file={}, revision={}", file, revision);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("save local config snapshot fail, file={}, revision={}", file, revision, e);
+        } finally {
+            if (null != tmp) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static Record decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final long revision = buffer.getLong();
+            final String key = readString(buffer);
+            final int endpointCount = buffer.getInt();
+            if (endpointCount < 0 || endpointCount > MAX_HEADER_STRING_BYTES) {
+                return null;
+            }
+            final String[] endpoints = new String[endpointCount];
+            for (int i = 0; i < endpointCount; ++i) {
+                endpoints[i] = readString(buffer);
+                if (null == endpoints[i]) {
+                    return null;
+                }
+            }
+            final int contentLength = buffer.getInt();
+            if (null == key || contentLength < 0 || contentLength > buffer.remaining() - 8) {
+                return null;
+            }
+            final int contentStart = buffer.position();
+            final int contentEnd = contentStart + contentLength;
+            final CRC32 crc = new CRC32();
+            crc.update(region(buffer, 0, contentEnd));
+            if (buffer.getLong(contentEnd) != crc.getValue()) {
+                return null;
+            }
+            return new Record(revision, key, endpoints, region(buffer, contentStart, contentEnd));
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * buffer中 [from, to) 的视图，经由 Buffer 调用以兼容在高版本JDK上编译、在Java 8上运行
+     */
+    private static ByteBuffer region(ByteBuffer buffer, int from, int to) {
+        final ByteBuffer region = buffer.duplicate();
+        ((Buffer) region).limit(to);
+        ((Buffer) region).position(from);
+        return region.slice();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > MAX_HEADER_STRING_BYTES) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 本地快照内容
+     */
+    static final class Record {
+
+        private final long revision;
+
+        private final String key;
+
+        private final String[] endpoints;
+
+        private final ByteBuffer content;
+
+        Record(long revision, String key, String[] endpoints, ByteBuffer content) {
+            this.revision = revision;
+            this.key = key;
+            this.endpoints = endpoints;
+            this.content = content;
+        }
+
+        long getRevision() {
+            return revision;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        String[] getEndpoints() {
+            return endpoints;
+        }
+
+        /**
+         * @return 只读的配置文本，底层为内存映射
+         */
+        ByteBuffer getContent() {
+            return content.asReadOnlyBuffer();
+        }
+    }
+}
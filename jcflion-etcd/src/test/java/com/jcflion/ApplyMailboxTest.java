@@ -0,0 +1,75 @@
+package com.jcflion;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 加载期间到达的多次修改合并为一次加载
+ *
+ * @author kanner
+ */
+public class ApplyMailboxTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void burstDuringSlowApplyIsAppliedOnceWithLatestRevision() throws Exception {
+        final List<Long> applied = new CopyOnWriteArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        final ApplyMailbox<Long> mailbox = new ApplyMailbox<>(executor, Long::longValue, revision -> {
+            applied.add(revision);
+            if (1L == revision) {
+                started.countDown();
+                await(release);
+            }
+            finished.countDown();
+        });
+
+        mailbox.accept(1L);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 第一次加载尚未完成时连续投递，线程池有空闲线程也不会并发加载
+        for (long revision = 2L; revision <= 100L; ++revision) {
+            mailbox.accept(revision);
+        }
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1L, 100L), applied);
+    }
+
+    @Test
+    public void valueOfferedAfterDrainIsApplied() throws Exception {
+        final List<Long> applied = new CopyOnWriteArrayList<>();
+        final ApplyMailbox<Long> mailbox = new ApplyMailbox<>(Runnable::run, Long::longValue, applied::add);
+        mailbox.accept(1L);
+        mailbox.accept(2L);
+        assertEquals(Arrays.asList(1L, 2L), applied);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.jcflion;
+
+import com.coreos.jetcd.data.KeyValue;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 前缀模式下启动时本地快照是否为最新的判断
+ *
+ * @author kanner
+ */
+public class ConfigFileSetTest {
+
+    private static final String PREFIX = "/cflion/app1/";
+
+    @Test
+    public void localSnapshotIsUpToDate() {
+        final ConfigFileSet.Changes saved = saved();
+        assertEquals(new HashSet<>(Arrays.asList("app", "db")), ConfigFileSet.configFilenames(saved.getContent()));
+
+        final ConfigFileSet fileSet = new ConfigFileSet(PREFIX);
+        final List<KeyValue> keyValues = Arrays.asList(keyValue("app", "k=v\n[other]\n", 5L), keyValue("db", "url=x", 7L));
+        fileSet.replaceAll(keyValues, 12L);
+        assertTrue(fileSet.isUpToDate(keyValues, saved.getRevision(), ConfigFileSet.configFilenames(saved.getContent())));
+        // 不再整体加载和重写本地快照
+        assertNull(fileSet.drainChanges());
+    }
+
+    @Test
+    public void modifiedAfterLocalSnapshot() {
+        final ConfigFileSet.Changes saved = saved();
+        final ConfigFileSet fileSet = new ConfigFileSet(PREFIX);
+        final List<KeyValue> keyValues = Arrays.asList(keyValue("app", "k=v2", 11L), keyValue("db", "url=x", 7L));
+        fileSet.replaceAll(keyValues, 12L);
+        assertFalse(fileSet.isUpToDate(keyValues, saved.getRevision(), ConfigFileSet.configFilenames(saved.getContent())));
+        assertTrue(fileSet.drainChanges().isReplaced());
+    }
+
+    @Test
+    public void deletedOrAddedAfterLocalSnapshot() {
+        final ConfigFileSet.Changes saved = saved();
+        final ConfigFileSet deleted = new ConfigFileSet(PREFIX);
+        final List<KeyValue> remaining = Collections.singletonList(keyValue("app", "k=v\n[other]\n", 5L));
+        deleted.replaceAll(remaining, 12L);
+        assertFalse(deleted.isUpToDate(remaining, saved.getRevision(), ConfigFileSet.configFilenames(saved.getContent())));
+        assertTrue(deleted.drainChanges().isReplaced());
+
+        final ConfigFileSet noLocal = new ConfigFileSet(PREFIX);
+        noLocal.replaceAll(remaining, 12L);
+        assertFalse(noLocal.isUpToDate(remaining, 0L, null));
+    }
+
+    @Test
+    public void incrementalChangesDoNotMergeContent() {
+        final ConfigFileSet fileSet = new ConfigFileSet(PREFIX);
+        fileSet.replaceAll(Arrays.asList(keyValue("app", "k=v\n[other]\n", 5L), keyValue("db", "url=x", 7L)), 10L);
+        assertTrue(fileSet.drainChanges().isReplaced());
+
+        fileSet.put(keyValue("db", "url=y", 11L));
+        fileSet.put(keyValue("cache", "size=1", 12L));
+        final ConfigFileSet.Changes changes = fileSet.drainChanges();
+        assertFalse(changes.isReplaced());
+        assertEquals(new HashSet<>(Arrays.asList("db", "cache")), changes.getFiles().keySet());
+        // 增量加载不合并整个应用的配置文本
+        assertNull(changes.getContent());
+
+        final ConfigFileSet.Snapshot snapshot = fileSet.snapshot();
+        assertEquals(12L, snapshot.getRevision());
+        assertEquals("[app]\nk=v\n[cache]\nsize=1\n[db]\nurl=y\n", StandardCharsets.UTF_8.decode(snapshot.getContent()).toString());
+        assertEquals(new HashSet<>(Arrays.asList("app", "cache", "db")), ConfigFileSet.configFilenames(snapshot.getContent()));
+    }
+
+    /**
+     * 上次运行时保存的本地快照，revision为拉取时etcd的revision
+     */
+    private static ConfigFileSet.Changes saved() {
+        final ConfigFileSet fileSet = new ConfigFileSet(PREFIX);
+        fileSet.replaceAll(Arrays.asList(keyValue("app", "k=v\n[other]\n", 5L), keyValue("db", "url=x", 7L)), 10L);
+        final ConfigFileSet.Changes changes = fileSet.drainChanges();
+        assertEquals(10L, changes.getRevision());
+        return changes;
+    }
+
+    private static KeyValue keyValue(String configFilename, String content, long modRevision) {
+        return new KeyValue(com.coreos.jetcd.api.KeyValue.newBuilder()
+                .setKey(ByteString.copyFromUtf8(PREFIX + configFilename))
+                .setValue(ByteString.copyFromUtf8(content))
+                .setModRevision(modRevision)
+                .build());
+    }
+}
@@ -0,0 +1,302 @@
+package com.jcflion;
+
+import com.coreos.jetcd.Watch;
+import com.coreos.jetcd.api.Event;
+import com.coreos.jetcd.api.RangeResponse;
+import com.coreos.jetcd.api.ResponseHeader;
+import com.coreos.jetcd.common.exception.EtcdExceptionFactory;
+import com.coreos.jetcd.data.ByteSequence;
+import com.coreos.jetcd.data.KeyValue;
+import com.coreos.jetcd.kv.GetResponse;
+import com.coreos.jetcd.watch.WatchResponse;
+import com.google.protobuf.ByteString;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 监听线程的状态转换：断线重连后从下一个revision继续、revision被压缩时重新拉取、多个订阅共用一个watch
+ *
+ * @author kanner
+ */
+public class EtcdWatcherTest {
+
+    private static final long TIMEOUT_SECONDS = 5L;
+
+    private final FakeEtcd etcd = new FakeEtcd();
+
+    private final EtcdWatcher watcher = new EtcdWatcher(etcd, new Backoff(1L, 2L));
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        watcher.close();
+        for (final Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    public void resumeFromNextRevisionAfterConnectionError() throws Exception {
+        etcd.put("/app/db", "x", 10L);
+        final RecordingListener listener = new RecordingListener();
+        subscribe("/app/", true, listener);
+        expect(etcd.calls, "session 1", "get /app/*", "watch /app/../app0@11");
+        expect(listener.events, "get 10 [/app/db]");
+
+        final FakeWatch first = etcd.nextWatch();
+        first.push(put("/app/db", "y", 12L));
+        expect(listener.events, "put /app/db 12");
+
+        // 连接异常：重连后从已处理revision的下一个继续，不重新拉取全量配置
+        first.fail(new IllegalStateException("connection lost"));
+        expect(etcd.calls, "reconnect 1", "session 2", "watch /app/../app0@13");
+
+        // 并非由订阅变化引起的watch关闭同样按连接异常处理
+        etcd.nextWatch().close();
+        expect(etcd.calls, "reconnect 2", "session 3", "watch /app/../app0@13");
+        etcd.nextWatch().push(put("/app/db", "z", 14L));
+        expect(listener.events, "put /app/db 14");
+        assertNull(listener.events.poll());
+    }
+
+    @Test
+    public void reloadWhenRevisionIsCompacted() throws Exception {
+        etcd.put("/app/db", "x", 10L);
+        final RecordingListener listener = new RecordingListener();
+        subscribe("/app/", true, listener);
+        expect(etcd.calls, "session 1", "get /app/*", "watch /app/../app0@11");
+        expect(listener.events, "get 10 [/app/db]");
+
+        etcd.put("/app/cache", "1", 25L);
+        etcd.nextWatch().fail(EtcdExceptionFactory.newCompactedException(20L));
+        // 不重连，重新拉取后从拉取时revision的下一个开始监听
+        expect(etcd.calls, "get /app/*", "watch /app/../app0@26");
+        expect(listener.events, "get 25 [/app/cache, /app/db]");
+    }
+
+    @Test
+    public void subscriptionsShareOneWatch() throws Exception {
+        etcd.put("/a/x", "1", 10L);
+        final RecordingListener first = new RecordingListener();
+        final EtcdWatcher.Subscription firstSubscription = subscribe("/a/", true, first);
+        expect(etcd.calls, "session 1", "get /a/*", "watch /a/../a0@11");
+        expect(first.events, "get 10 [/a/x]");
+        etcd.nextWatch().push(put("/a/x", "2", 15L));
+        expect(first.events, "put /a/x 15");
+
+        // 新订阅只拉取自己的key，合并后的watch从各订阅中最小的已处理revision之后开始
+        etcd.put("/b", "1", 20L);
+        final RecordingListener second = new RecordingListener();
+        final EtcdWatcher.Subscription secondSubscription = subscribe("/b", false, second);
+        expect(etcd.calls, "get /b", "watch /a/../b\u0000@16");
+        expect(second.events, "get 20 [/b]");
+
+        final FakeWatch shared = etcd.nextWatch();
+        // revision 18 已包含在第二个订阅拉取的全量配置中
+        shared.push(put("/b", "2", 18L), put("/a/y", "1", 19L));
+        expect(first.events, "put /a/y 19");
+        shared.push(put("/b", "3", 21L), delete("/a/x", 22L));
+        expect(second.events, "put /b 21");
+        expect(first.events, "delete /a/x 22");
+        assertNull(first.events.poll());
+        assertNull(second.events.poll());
+
+        // 取消订阅后以剩余订阅的范围重建watch，不重新拉取
+        firstSubscription.close();
+        expect(etcd.calls, "watch /b../b\u0000@23");
+        secondSubscription.close();
+        threads.get(0).join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(threads.get(0).isAlive());
+        assertEquals(1, threads.size());
+    }
+
+    private EtcdWatcher.Subscription subscribe(String key, boolean prefix, EtcdWatcher.Listener listener) {
+        return watcher.subscribe(key, prefix, listener, (name, task) -> {
+            final Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            threads.add(thread);
+            return thread;
+        });
+    }
+
+    private static void expect(BlockingQueue<String> queue, String... expected) throws InterruptedException {
+        for (final String value : expected) {
+            assertEquals(value, queue.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Event put(String key, String value, long revision) {
+        return Event.newBuilder().setType(Event.EventType.PUT).setKv(keyValue(key, value, revision)).build();
+    }
+
+    private static Event delete(String key, long revision) {
+        return Event.newBuilder().setType(Event.EventType.DELETE).setKv(keyValue(key, "", revision)).build();
+    }
+
+    private static com.coreos.jetcd.api.KeyValue keyValue(String key, String value, long revision) {
+        return com.coreos.jetcd.api.KeyValue.newBuilder()
+                .setKey(ByteString.copyFromUtf8(key))
+                .setValue(ByteString.copyFromUtf8(value))
+                .setModRevision(revision)
+                .build();
+    }
+
+    /**
+     * 记录监听线程对etcd的每次访问，只在监听线程中调用
+     */
+    private static final class FakeEtcd implements EtcdWatcher.Transport {
+
+        private final BlockingQueue<String> calls = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<FakeWatch> watches = new LinkedBlockingQueue<>();
+
+        private final Map<String, com.coreos.jetcd.api.KeyValue> data = new TreeMap<>();
+
+        private long revision;
+
+        private FakeSession current;
+
+        private int sessions;
+
+        synchronized void put(String key, String value, long revision) {
+            data.put(key, keyValue(key, value, revision));
+            this.revision = revision;
+        }
+
+        FakeWatch nextWatch() throws InterruptedException {
+            final FakeWatch watch = watches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(watch);
+            return watch;
+        }
+
+        @Override
+        public synchronized EtcdWatcher.Session session() {
+            if (null == current) {
+                current = new FakeSession(++sessions);
+            }
+            calls.add("session " + current.id);
+            return current;
+        }
+
+        @Override
+        public synchronized void reconnect(EtcdWatcher.Session broken) {
+            calls.add("reconnect " + ((FakeSession) broken).id);
+            if (broken == current) {
+                current = null;
+            }
+        }
+
+        private synchronized GetResponse range(String key, boolean prefix) {
+            final RangeResponse.Builder response = RangeResponse.newBuilder()
+                    .setHeader(ResponseHeader.newBuilder().setRevision(revision));
+            for (final Map.Entry<String, com.coreos.jetcd.api.KeyValue> entry : data.entrySet()) {
+                if (prefix ? entry.getKey().startsWith(key) : entry.getKey().equals(key)) {
+                    response.addKvs(entry.getValue());
+                }
+            }
+            return new GetResponse(response.build());
+        }
+
+        private final class FakeSession implements EtcdWatcher.Session {
+
+            private final int id;
+
+            private FakeSession(int id) {
+                this.id = id;
+            }
+
+            @Override
+            public GetResponse get(ByteSequence key, boolean prefix) {
+                calls.add("get " + key.toStringUtf8() + (prefix ? "*" : ""));
+                return range(key.toStringUtf8(), prefix);
+            }
+
+            @Override
+            public Watch.Watcher watch(ByteSequence from, ByteSequence end, long revision) {
+                calls.add("watch " + from.toStringUtf8() + ".." + end.toStringUtf8() + "@" + revision);
+                final FakeWatch watch = new FakeWatch();
+                watches.add(watch);
+                return watch;
+            }
+        }
+    }
+
+    /**
+     * listen() 依次返回推入的事件或抛出推入的异常，关闭后抛出 ClosedWatcherException
+     */
+    private static final class FakeWatch implements Watch.Watcher {
+
+        private static final Object CLOSED = new Object();
+
+        private final BlockingQueue<Object> responses = new LinkedBlockingQueue<>();
+
+        void push(Event... events) {
+            final com.coreos.jetcd.api.WatchResponse.Builder response = com.coreos.jetcd.api.WatchResponse.newBuilder();
+            for (final Event event : events) {
+                response.addEvents(event);
+            }
+            responses.add(new WatchResponse(response.build()));
+        }
+
+        void fail(RuntimeException e) {
+            responses.add(e);
+        }
+
+        @Override
+        public void close() {
+            responses.add(CLOSED);
+        }
+
+        @Override
+        public WatchResponse listen() throws InterruptedException {
+            final Object response = responses.take();
+            if (CLOSED == response) {
+                responses.add(CLOSED);
+                throw EtcdExceptionFactory.newClosedWatcherException();
+            }
+            if (response instanceof RuntimeException) {
+                throw (RuntimeException) response;
+            }
+            return (WatchResponse) response;
+        }
+    }
+
+    private static final class RecordingListener implements EtcdWatcher.Listener {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onGet(List<KeyValue> keyValues, long revision) {
+            final List<String> keys = new ArrayList<>();
+            for (final KeyValue keyValue : keyValues) {
+                keys.add(keyValue.getKey().toStringUtf8());
+            }
+            events.add("get " + revision + " " + keys);
+        }
+
+        @Override
+        public void onPut(KeyValue keyValue) {
+            events.add("put " + keyValue.getKey().toStringUtf8() + " " + keyValue.getModRevision());
+        }
+
+        @Override
+        public void onDelete(KeyValue keyValue) {
+            events.add("delete " + keyValue.getKey().toStringUtf8() + " " + keyValue.getModRevision());
+        }
+    }
+}
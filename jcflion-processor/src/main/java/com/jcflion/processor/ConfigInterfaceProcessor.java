@@ -0,0 +1,491 @@
+package com.jcflion.processor;
+
+import com.jcflion.annotation.ConfigFile;
+import com.jcflion.annotation.ConfigItem;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 为标注了 {@link ConfigFile} 的配置接口生成实现类。
+ * 每个配置项在实现类加载时创建一个 com.jcflion.ConfigKey 句柄，getter 直接读取句柄在当前快照中解析好的配置值，
+ * 调用时没有反射、代理和字符串处理；配置文件名、配置名、返回类型和默认值在编译时校验，不合法时编译失败。
+ * 该处理器单独打包为 jcflion-processor，通过 META-INF/services 注册，只在使用方的 annotationProcessorPaths 中启用，
+ * 不在运行时classpath上，也不会让每个依赖客户端的工程的javac都运行处理器
+ *
+ * @author kanner
+ */
+public final class ConfigInterfaceProcessor extends AbstractProcessor {
+
+    private static final String IMPL_SUFFIX = "Impl";
+
+    private static final String INSTANCE = "INSTANCE";
+
+    /**
+     * 配置接口方法支持的返回类型
+     */
+    private enum ValueType {
+        STRING, BOOLEAN, SHORT, INT, LONG, FLOAT, DOUBLE
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList(ConfigFile.class.getCanonicalName(), ConfigItem.class.getCanonicalName()));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (final Element element : roundEnv.getElementsAnnotatedWith(ConfigFile.class)) {
+            final ConfigInterface configInterface = parse(element);
+            if (null != configInterface) {
+                write(configInterface);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 校验配置接口，所有错误都报告后再返回
+     *
+     * @return 配置接口，不合法时返回null
+     */
+    private ConfigInterface parse(Element element) {
+        if (ElementKind.INTERFACE != element.getKind()) {
+            error(element, "@ConfigFile is only allowed on interfaces");
+            return null;
+        }
+        final TypeElement type = (TypeElement) element;
+        boolean valid = true;
+        if (NestingKind.TOP_LEVEL != type.getNestingKind() && NestingKind.MEMBER != type.getNestingKind()) {
+            error(type, "@ConfigFile interface must be a top level or member interface");
+            valid = false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "@ConfigFile interface must not be generic");
+            valid = false;
+        }
+        boolean isPublic = true;
+        for (Element e = type; ElementKind.PACKAGE != e.getKind(); e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error(type, "@ConfigFile interface must not be private or nested in a private type");
+                valid = false;
+            }
+            isPublic &= e.getModifiers().contains(Modifier.PUBLIC);
+        }
+        final String configFilename = type.getAnnotation(ConfigFile.class).value();
+        final String filenameError = checkConfigFilename(configFilename);
+        if (null != filenameError) {
+            error(type, "illegal config filename \"" + configFilename + "\": " + filenameError);
+            valid = false;
+        }
+
+        final List<Item> items = new ArrayList<>();
+        final Map<String, String> keys = new HashMap<>();
+        for (final ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (ElementKind.INTERFACE != method.getEnclosingElement().getKind()
+                    || !method.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            final Item item = parseItem(type, method);
+            if (null == item) {
+                valid = false;
+                continue;
+            }
+            final String duplicate = keys.put(item.key, item.methodName);
+            if (null != duplicate) {
+                error(method, "duplicate config key \"" + item.key + "\", already bound to " + duplicate + "()");
+                valid = false;
+                continue;
+            }
+            items.add(item);
+        }
+        return valid ? new ConfigInterface(type, configFilename, isPublic, items) : null;
+    }
+
+    private Item parseItem(TypeElement type, ExecutableElement method) {
+        final String methodName = method.getSimpleName().toString();
+        final ConfigItem configItem = method.getAnnotation(ConfigItem.class);
+        if (null == configItem) {
+            error(method, "method " + methodName + "() of @ConfigFile interface " + type.getQualifiedName()
+                    + " must be annotated with @ConfigItem");
+            return null;
+        }
+        boolean valid = true;
+        if (!method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()) {
+            error(method, "@ConfigItem method " + methodName + "() must have no parameters or type parameters");
+            valid = false;
+        }
+        final ValueType valueType = valueType(method.getReturnType());
+        if (null == valueType) {
+            error(method, "@ConfigItem method " + methodName + "() must return String, boolean, short, int, long, float or double");
+            valid = false;
+        }
+        final String key = configItem.value();
+        final String keyError = checkKey(key);
+        if (null != keyError) {
+            error(method, "illegal config key \"" + key + "\": " + keyError);
+            valid = false;
+        }
+        if (!valid) {
+            return null;
+        }
+        final String defaultValue = configItem.defaultValue();
+        final String defaultLiteral = defaultLiteral(valueType, defaultValue);
+        if (null == defaultLiteral && ValueType.STRING != valueType) {
+            error(method, "default value \"" + defaultValue + "\" of " + methodName + "() is not a valid "
+                    + valueType.name().toLowerCase());
+            return null;
+        }
+        return new Item(methodName, key, valueType, defaultLiteral);
+    }
+
+    private ValueType valueType(TypeMirror returnType) {
+        switch (returnType.getKind()) {
+            case BOOLEAN:
+                return ValueType.BOOLEAN;
+            case SHORT:
+                return ValueType.SHORT;
+            case INT:
+                return ValueType.INT;
+            case LONG:
+                return ValueType.LONG;
+            case FLOAT:
+                return ValueType.FLOAT;
+            case DOUBLE:
+                return ValueType.DOUBLE;
+            case DECLARED:
+                final TypeElement string = processingEnv.getElementUtils().getTypeElement(String.class.getCanonicalName());
+                return processingEnv.getTypeUtils().isSameType(returnType, string.asType()) ? ValueType.STRING : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 配置文件名需能出现在"[配置文件名]"行和"配置文件名.配置名"中
+     *
+     * @return 错误原因，合法时返回null
+     */
+    private static String checkConfigFilename(String configFilename) {
+        if (configFilename.trim().isEmpty()) {
+            return "must not be empty";
+        }
+        if (!configFilename.equals(configFilename.trim())) {
+            return "must not start or end with whitespace";
+        }
+        if (configFilename.indexOf('.') >= 0) {
+            return "must not contain '.'";
+        }
+        if (containsAny(configFilename, "[]\r\n")) {
+            return "must not contain '[', ']' or line breaks";
+        }
+        return null;
+    }
+
+    /**
+     * 配置名需能出现在"配置名=配置值"行中
+     *
+     * @return 错误原因，合法时返回null
+     */
+    private static String checkKey(String key) {
+        if (key.trim().isEmpty()) {
+            return "must not be empty";
+        }
+        if (!key.equals(key.trim())) {
+            return "must not start or end with whitespace";
+        }
+        if (containsAny(key, "=\r\n")) {
+            return "must not contain '=' or line breaks";
+        }
+        if (key.charAt(0) == '#' || key.charAt(0) == '[') {
+            return "must not start with '#' or '['";
+        }
+        return null;
+    }
+
+    private static boolean containsAny(String s, String chars) {
+        for (int i = 0; i < chars.length(); ++i) {
+            if (s.indexOf(chars.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 默认值的Java字面量，无法解析为返回类型时返回null
+     */
+    private static String defaultLiteral(ValueType valueType, String defaultValue) {
+        if (ValueType.STRING == valueType) {
+            return defaultValue.isEmpty() ? null : stringLiteral(defaultValue);
+        }
+        if (defaultValue.isEmpty()) {
+            switch (valueType) {
+                case BOOLEAN:
+                    return "false";
+                case SHORT:
+                    return "(short) 0";
+                case LONG:
+                    return "0L";
+                case FLOAT:
+                    return "0.0F";
+                case DOUBLE:
+                    return "0.0D";
+                default:
+                    return "0";
+            }
+        }
+        if (!defaultValue.equals(defaultValue.trim())) {
+            return null;
+        }
+        try {
+            switch (valueType) {
+                case BOOLEAN:
+                    return "true".equals(defaultValue) || "false".equals(defaultValue) ? defaultValue : null;
+                case SHORT:
+                    return "(short) " + Short.parseShort(defaultValue);
+                case INT:
+                    return Integer.toString(Integer.parseInt(defaultValue));
+                case LONG:
+                    return Long.parseLong(defaultValue) + "L";
+                case FLOAT:
+                    final float f = Float.parseFloat(defaultValue);
+                    if (Float.isNaN(f)) {
+                        return "Float.NaN";
+                    }
+                    if (Float.isInfinite(f)) {
+                        return f > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+                    }
+                    return f + "F";
+                case DOUBLE:
+                    final double d = Double.parseDouble(defaultValue);
+                    if (Double.isNaN(d)) {
+                        return "Double.NaN";
+                    }
+                    if (Double.isInfinite(d)) {
+                        return d > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+                    }
+                    return d + "D";
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String stringLiteral(String s) {
+        final StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    if (c < ' ') {
+                        // javac在分词前展开Unicode转义，换行等控制字符写成Unicode转义会截断字符串，只能用八进制转义
+                        sb.append(String.format("\\%03o", (int) c));
+                    } else if (c > '~') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private void write(ConfigInterface configInterface) {
+        final TypeElement type = configInterface.type;
+        final String packageName = packageOf(type).getQualifiedName().toString();
+        final String implName = implName(type);
+        final String interfaceName = type.getQualifiedName().toString();
+        final String modifiers = configInterface.isPublic ? "public final " : "final ";
+
+        final StringBuilder sb = new StringBuilder(1024);
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("/**\n")
+                .append(" * 由 ").append(getClass().getName()).append(" 根据 ").append(interfaceName).append(" 生成，请勿修改。\n")
+                .append(" */\n")
+                .append(modifiers).append("class ").append(implName).append(" implements ").append(interfaceName).append(" {\n\n");
+        final Set<String> fieldNames = new HashSet<>();
+        fieldNames.add(INSTANCE);
+        final List<String> fields = new ArrayList<>(configInterface.items.size());
+        for (final Item item : configInterface.items) {
+            final String fieldName = fieldName(item.methodName, fieldNames);
+            fields.add(fieldName);
+            sb.append("    private static final com.jcflion.ConfigKey ").append(fieldName)
+                    .append(" = com.jcflion.ConfigManager.key(").append(stringLiteral(configInterface.configFilename))
+                    .append(", ").append(stringLiteral(item.key)).append(");\n");
+        }
+        if (!fields.isEmpty()) {
+            sb.append('\n');
+        }
+        sb.append("    ").append(configInterface.isPublic ? "public " : "").append("static final ").append(interfaceName)
+                .append(' ').append(INSTANCE).append(" = new ").append(implName).append("();\n");
+        for (int i = 0; i < configInterface.items.size(); ++i) {
+            final Item item = configInterface.items.get(i);
+            sb.append("\n    @Override\n")
+                    .append("    public ").append(javaType(item.valueType)).append(' ').append(item.methodName).append("() {\n")
+                    .append("        return ").append(fields.get(i)).append('.').append(getter(item)).append(";\n")
+                    .append("    }\n");
+        }
+        sb.append("}\n");
+
+        final String qualifiedImplName = packageName.isEmpty() ? implName : packageName + "." + implName;
+        try (final Writer writer = processingEnv.getFiler().createSourceFile(qualifiedImplName, type).openWriter()) {
+            writer.write(sb.toString());
+        } catch (IOException e) {
+            error(type, "failed to write " + qualifiedImplName + ": " + e.getMessage());
+        }
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (ElementKind.PACKAGE != element.getKind()) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    /**
+     * 嵌套接口以"_"连接外层类名，如 Outer.Timeouts -> Outer_TimeoutsImpl
+     */
+    private static String implName(TypeElement type) {
+        final StringBuilder sb = new StringBuilder(type.getSimpleName()).append(IMPL_SUFFIX);
+        for (Element e = type.getEnclosingElement(); ElementKind.PACKAGE != e.getKind(); e = e.getEnclosingElement()) {
+            sb.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 方法名转换为常量名，如 connectTimeout -> CONNECT_TIMEOUT，重名时追加序号
+     */
+    private static String fieldName(String methodName, Set<String> used) {
+        final StringBuilder sb = new StringBuilder(methodName.length() + 4);
+        for (int i = 0; i < methodName.length(); ++i) {
+            final char c = methodName.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(methodName.charAt(i - 1))) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        final String base = sb.toString();
+        String name = base;
+        for (int i = 2; !used.add(name); ++i) {
+            name = base + "_" + i;
+        }
+        return name;
+    }
+
+    private static String javaType(ValueType valueType) {
+        return ValueType.STRING == valueType ? "String" : valueType.name().toLowerCase();
+    }
+
+    private static String getter(Item item) {
+        switch (item.valueType) {
+            case STRING:
+                return null == item.defaultLiteral ? "get()" : "getWithDefault(" + item.defaultLiteral + ")";
+            case BOOLEAN:
+                return "getBoolean(" + item.defaultLiteral + ")";
+            case SHORT:
+                return "getShort(" + item.defaultLiteral + ")";
+            case INT:
+                return "getInt(" + item.defaultLiteral + ")";
+            case LONG:
+                return "getLong(" + item.defaultLiteral + ")";
+            case FLOAT:
+                return "getFloat(" + item.defaultLiteral + ")";
+            default:
+                return "getDouble(" + item.defaultLiteral + ")";
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class ConfigInterface {
+
+        private final TypeElement type;
+
+        private final String configFilename;
+
+        private final boolean isPublic;
+
+        private final List<Item> items;
+
+        ConfigInterface(TypeElement type, String configFilename, boolean isPublic, List<Item> items) {
+            this.type = type;
+            this.configFilename = configFilename;
+            this.isPublic = isPublic;
+            this.items = items;
+        }
+    }
+
+    private static final class Item {
+
+        private final String methodName;
+
+        private final String key;
+
+        private final ValueType valueType;
+        /**
+         * 默认值的Java字面量，String配置没有默认值时为null
+         */
+        private final String defaultLiteral;
+
+        Item(String methodName, String key, ValueType valueType, String defaultLiteral) {
+            this.methodName = methodName;
+            this.key = key;
+            this.valueType = valueType;
+            this.defaultLiteral = defaultLiteral;
+        }
+    }
+}
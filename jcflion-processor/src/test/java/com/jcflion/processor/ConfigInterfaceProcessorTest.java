@@ -0,0 +1,221 @@
+package com.jcflion.processor;
+
+import com.jcflion.ConfigManager;
+import com.jcflion.annotation.ConfigFile;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用 javax.tools.JavaCompiler 编译配置接口，校验生成的实现类和编译错误
+ *
+ * @author kanner
+ */
+public class ConfigInterfaceProcessorTest {
+
+    private static final String GREETING = "a\nb\r\t\"c\"\\u000a\001\000\177\u00e9\u4e2d";
+
+    private static final String GOOD = "package demo;\n"
+            + "import com.jcflion.annotation.ConfigFile;\n"
+            + "import com.jcflion.annotation.ConfigItem;\n"
+            + "@ConfigFile(\"proctest\")\n"
+            + "public interface Timeouts {\n"
+            + "    @ConfigItem(value = \"connect.timeout\", defaultValue = \"100\")\n"
+            + "    int connectTimeout();\n"
+            + "    @ConfigItem(\"name\")\n"
+            + "    String name();\n"
+            + "    @ConfigItem(value = \"greeting\", defaultValue = " + javaString(GREETING) + ")\n"
+            + "    String greeting();\n"
+            + "    @ConfigItem(value = \"ratio\", defaultValue = \"NaN\")\n"
+            + "    double ratio();\n"
+            + "    @ConfigItem(value = \"min\", defaultValue = \"-9223372036854775808\")\n"
+            + "    long min();\n"
+            + "    @ConfigItem(value = \"small\", defaultValue = \"-7\")\n"
+            + "    short small();\n"
+            + "    @ConfigItem(\"enabled\")\n"
+            + "    boolean enabled();\n"
+            + "    @ConfigFile(\"proctest2\")\n"
+            + "    interface Inner {\n"
+            + "        @ConfigItem(value = \"x\", defaultValue = \"1.5\")\n"
+            + "        float x();\n"
+            + "    }\n"
+            + "}\n";
+
+    @Test
+    public void generatedGettersReadCurrentSnapshot() throws Exception {
+        final Compilation compilation = compile("demo.Timeouts", GOOD);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).toString(), compilation.success);
+        // ConfigItem 也由处理器认领，-Xlint:processing 下没有警告
+        assertEquals(Arrays.asList(), compilation.messages(Diagnostic.Kind.WARNING));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{compilation.classes.toUri().toURL()}, getClass().getClassLoader())) {
+            final Class<?> iface = loader.loadClass("demo.Timeouts");
+            final Object timeouts = loader.loadClass("demo.TimeoutsImpl").getField("INSTANCE").get(null);
+            final Object inner = loader.loadClass("demo.Timeouts_InnerImpl").getField("INSTANCE").get(null);
+            final Class<?> innerIface = loader.loadClass("demo.Timeouts$Inner");
+
+            ConfigManager.reloadConfigContent("[other]\nk=v\n");
+            assertEquals(100, iface.getMethod("connectTimeout").invoke(timeouts));
+            assertNull(iface.getMethod("name").invoke(timeouts));
+            assertEquals(GREETING, iface.getMethod("greeting").invoke(timeouts));
+            assertTrue(Double.isNaN((Double) iface.getMethod("ratio").invoke(timeouts)));
+            assertEquals(Long.MIN_VALUE, iface.getMethod("min").invoke(timeouts));
+            assertEquals((short) -7, iface.getMethod("small").invoke(timeouts));
+            assertEquals(false, iface.getMethod("enabled").invoke(timeouts));
+            assertEquals(1.5F, innerIface.getMethod("x").invoke(inner));
+
+            ConfigManager.reloadConfigContent("[proctest]\nconnect.timeout=250\nname=abc\ngreeting=hi\nratio=0.5\n"
+                    + "min=3\nsmall=oops\nenabled=true\n[proctest2]\nx=2.5\n");
+            assertEquals(250, iface.getMethod("connectTimeout").invoke(timeouts));
+            assertEquals("abc", iface.getMethod("name").invoke(timeouts));
+            assertEquals("hi", iface.getMethod("greeting").invoke(timeouts));
+            assertEquals(0.5D, iface.getMethod("ratio").invoke(timeouts));
+            assertEquals(3L, iface.getMethod("min").invoke(timeouts));
+            // 无法解析时使用默认值
+            assertEquals((short) -7, iface.getMethod("small").invoke(timeouts));
+            assertEquals(true, iface.getMethod("enabled").invoke(timeouts));
+            assertEquals(2.5F, innerIface.getMethod("x").invoke(inner));
+        }
+    }
+
+    @Test
+    public void duplicateKey() throws Exception {
+        assertError("@ConfigItem(\"timeout\") int a(); @ConfigItem(\"timeout\") int b();",
+                "duplicate config key \"timeout\", already bound to a()");
+    }
+
+    @Test
+    public void unsupportedReturnType() throws Exception {
+        assertError("@ConfigItem(\"list\") java.util.List<String> list();",
+                "@ConfigItem method list() must return String, boolean, short, int, long, float or double");
+        assertError("@ConfigItem(\"boxed\") Integer boxed();",
+                "@ConfigItem method boxed() must return String, boolean, short, int, long, float or double");
+    }
+
+    @Test
+    public void badDefault() throws Exception {
+        assertError("@ConfigItem(value = \"timeout\", defaultValue = \"10s\") int timeout();",
+                "default value \"10s\" of timeout() is not a valid int");
+        assertError("@ConfigItem(value = \"flag\", defaultValue = \"yes\") boolean flag();",
+                "default value \"yes\" of flag() is not a valid boolean");
+        assertError("@ConfigItem(value = \"small\", defaultValue = \"40000\") short small();",
+                "default value \"40000\" of small() is not a valid short");
+        assertError("@ConfigItem(value = \"padded\", defaultValue = \" 1\") int padded();",
+                "default value \" 1\" of padded() is not a valid int");
+    }
+
+    @Test
+    public void illegalKeyAndMissingAnnotation() throws Exception {
+        assertError("@ConfigItem(\"a=b\") String eq();", "illegal config key \"a=b\": must not contain '=' or line breaks");
+        assertError("@ConfigItem(\"a\\nb\") String nl();", "must not contain '=' or line breaks");
+        assertError("int missing();", "method missing() of @ConfigFile interface demo.Bad must be annotated with @ConfigItem");
+        assertError("@ConfigItem(\"p\") int withParam(int x);", "@ConfigItem method withParam() must have no parameters or type parameters");
+    }
+
+    private static void assertError(String members, String expected) throws Exception {
+        final Compilation compilation = compile("demo.Bad", "package demo;\n"
+                + "import com.jcflion.annotation.ConfigFile;\n"
+                + "import com.jcflion.annotation.ConfigItem;\n"
+                + "@ConfigFile(\"bad\")\n"
+                + "public interface Bad {\n" + members + "\n}\n");
+        assertFalse(compilation.success);
+        final List<String> errors = compilation.messages(Diagnostic.Kind.ERROR);
+        boolean found = false;
+        for (final String error : errors) {
+            found |= error.contains(expected);
+        }
+        assertTrue(errors.toString(), found);
+        assertFalse(Files.exists(compilation.classes.resolve("demo/BadImpl.java")));
+    }
+
+    private static Compilation compile(String className, String code) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final Path out = Files.createTempDirectory("cflion-processor");
+        final List<String> options = Arrays.asList("-classpath", classpath(), "-d", out.toString(), "-s", out.toString(),
+                "-processor", ConfigInterfaceProcessor.class.getName(), "-Xlint:processing");
+        final JavaFileObject source = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+        final boolean success = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(source)).call();
+        return new Compilation(success, diagnostics.getDiagnostics(), out);
+    }
+
+    /**
+     * surefire 默认通过 manifest jar 传递classpath，直接取注解、处理器和slf4j所在的目录或jar
+     */
+    private static String classpath() throws Exception {
+        final Path core = Paths.get(ConfigFile.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        final Path classes = Paths.get(ConfigInterfaceProcessor.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        final Path slf4j = Paths.get(LoggerFactory.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        return core + File.pathSeparator + classes + File.pathSeparator + slf4j;
+    }
+
+    /**
+     * 写入测试源码的字符串字面量，与生成代码一样避免Unicode转义出现在字面量中
+     */
+    private static String javaString(String s) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            if ('"' == c || '\\' == c) {
+                sb.append('\\').append(c);
+            } else if (c < ' ' || (c > '~' && c < 0x100)) {
+                sb.append(String.format("\\%03o", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class Compilation {
+
+        private final boolean success;
+
+        private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+        private final Path classes;
+
+        Compilation(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, Path classes) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.classes = classes;
+        }
+
+        List<String> messages(Diagnostic.Kind kind) {
+            final List<String> messages = new ArrayList<>();
+            for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+                if (kind == diagnostic.getKind()) {
+                    messages.add(diagnostic.getMessage(null));
+                }
+            }
+            return messages;
+        }
+    }
+}